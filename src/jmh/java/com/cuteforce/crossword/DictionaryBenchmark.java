@@ -0,0 +1,112 @@
+package com.cuteforce.crossword;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building and loading a {@link Dictionary}, and of the prefix lookups the solvers and the
+ * {@link Grid} make.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DictionaryBenchmark {
+
+    private static final int PREFIXES = 1 << 10;
+
+    @Param({WordLists.SYNTHETIC})
+    public String words;
+
+    @Param({"5"})
+    public int size;
+
+    private File wordList;
+    private File compiled;
+    private Dictionary dictionary;
+    private String[] prefixes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.wordList = WordLists.get(this.words);
+        this.dictionary = new Dictionary(this.size, this.wordList);
+        this.compiled = File.createTempFile("dictionary", ".bin");
+        this.dictionary.save(this.compiled);
+
+        byte[] letters = this.dictionary.getWordLetters();
+        int wordCount = this.dictionary.getWordCount();
+        Random random = new Random(1);
+        this.prefixes = new String[PREFIXES];
+        for (int i = 0; i < PREFIXES; i++) {
+            int word = random.nextInt(wordCount);
+            char[] prefix = new char[1 + random.nextInt(this.size)];
+            for (int j = 0; j < prefix.length; j++) {
+                prefix[j] = this.dictionary.getLetter(letters[word * this.size + j]);
+            }
+            this.prefixes[i] = new String(prefix);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.compiled.delete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Dictionary build() throws IOException {
+        return new Dictionary(this.size, this.wordList);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Dictionary load() throws IOException {
+        return Dictionary.load(this.compiled);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int getNode() {
+        return this.dictionary.getNode(nextPrefix());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<Character> getPlausibleNextChars() {
+        return this.dictionary.getPlausibleNextChars(nextPrefix(), nextPrefix());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Map<Character, Double> getProb() {
+        return this.dictionary.getProb(nextPrefix());
+    }
+
+    private String nextPrefix() {
+        return this.prefixes[this.next++ & (PREFIXES - 1)];
+    }
+}
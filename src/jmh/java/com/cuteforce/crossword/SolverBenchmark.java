@@ -0,0 +1,106 @@
+package com.cuteforce.crossword;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search speed of {@link Crossword} and {@link BruteForceCrossword}. Each invocation searches with a fresh solver
+ * for at most {@link #BUDGET}, and the visited and deadends counters report the nodes searched per second. The
+ * nogood cache of {@link Crossword} is allocated once per trial and emptied before each invocation, so the
+ * allocation rate reported by the GC profiler is that of the search.
+ * Larger grids rarely finish within the budget, so they measure the speed of the search rather than the time to
+ * a grid.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SolverBenchmark {
+
+    private static final Duration BUDGET = Duration.ofSeconds(1);
+
+    /**
+     * Nodes searched, summed over the invocations of an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long visited;
+        public long deadends;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.visited = 0;
+            this.deadends = 0;
+        }
+
+        void add(SearchMetrics metrics) {
+            this.visited += metrics.getVisited();
+            this.deadends += metrics.getDeadends();
+        }
+    }
+
+    @Param({WordLists.SYNTHETIC})
+    public String words;
+
+    @Param({"4", "5", "6", "7"})
+    public int size;
+
+    private Dictionary dictionary;
+    private NogoodCache nogoods;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dictionary = new Dictionary(this.size, WordLists.get(this.words));
+        this.nogoods = new NogoodCache();
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearNogoods() {
+        this.nogoods.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Optional<String> crossword(Nodes nodes) {
+        Crossword solver = new Crossword(this.nogoods, this.dictionary);
+        Optional<String> grid = solver.solveAsync(BUDGET, this.executor).join();
+        nodes.add(solver.getMetrics());
+        return grid;
+    }
+
+    @Benchmark
+    public Optional<String> bruteForceCrossword(Nodes nodes) {
+        BruteForceCrossword solver = new BruteForceCrossword(this.dictionary);
+        Optional<String> grid = solver.solveAsync(BUDGET, this.executor).join();
+        nodes.add(solver.getMetrics());
+        return grid;
+    }
+}
@@ -0,0 +1,83 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Word lists the benchmarks run on, selected by name.
+ *
+ * "synthetic" is generated from a fixed seed with English letter frequencies, so it is the same on every run and
+ * does not depend on files outside the build, and is the default of the benchmarks. "lemmatization" is the word
+ * list the tests read, which is not in the repository, or the file given by the system property
+ * cuteforce.lemmatization. It is run with -p words=lemmatization.
+ */
+final class WordLists {
+
+    static final String SYNTHETIC = "synthetic";
+    static final String LEMMATIZATION = "lemmatization";
+
+    private static final int MIN_LENGTH = 3;
+    private static final int MAX_LENGTH = 9;
+    private static final int WORDS_PER_LENGTH = 40000;
+    private static final long SEED = 42;
+    private static final String LETTERS = "etaoinshrdlcumwfgypbvkjxqz";
+    private static final double[] FREQUENCIES = {
+        12.7, 9.1, 8.2, 7.5, 7.0, 6.7, 6.3, 6.1, 6.0, 4.3, 4.0, 2.8, 2.8,
+        2.4, 2.4, 2.2, 2.0, 2.0, 1.9, 1.5, 1.0, 0.8, 0.2, 0.2, 0.1, 0.1
+    };
+
+    private static File synthetic;
+
+    private WordLists() {
+    }
+
+    static synchronized File get(String name) throws IOException {
+        if (SYNTHETIC.equals(name)) {
+            if (synthetic == null) {
+                synthetic = writeSynthetic();
+            }
+            return synthetic;
+        }
+        Preconditions.checkArgument(LEMMATIZATION.equals(name), "Unknown word list " + name + ".");
+        File file = new File(System.getProperty("cuteforce.lemmatization",
+                "src/test/resources/com/cuteforce/crossword/lemmatization.txt"));
+        Preconditions.checkState(file.isFile(), "No word list at " + file + ", set -Dcuteforce.lemmatization.");
+        return file;
+    }
+
+    private static File writeSynthetic() throws IOException {
+        double[] cumulative = new double[FREQUENCIES.length];
+        double total = 0;
+        for (int i = 0; i < FREQUENCIES.length; i++) {
+            total += FREQUENCIES[i];
+            cumulative[i] = total;
+        }
+        Random random = new Random(SEED);
+        File file = File.createTempFile("synthetic", ".txt");
+        file.deleteOnExit();
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), Charsets.UTF_8)) {
+            char[] word = new char[MAX_LENGTH];
+            for (int length = MIN_LENGTH; length <= MAX_LENGTH; length++) {
+                for (int i = 0; i < WORDS_PER_LENGTH; i++) {
+                    for (int j = 0; j < length; j++) {
+                        double r = random.nextDouble() * total;
+                        int letter = 0;
+                        while (cumulative[letter] < r) {
+                            letter++;
+                        }
+                        word[j] = LETTERS.charAt(letter);
+                    }
+                    out.write(word, 0, length);
+                    out.newLine();
+                }
+            }
+        }
+        return file;
+    }
+}
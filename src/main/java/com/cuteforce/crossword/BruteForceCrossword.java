@@ -1,81 +1,410 @@
 package com.cuteforce.crossword;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class BruteForceCrossword {
 
+    private static final long NODES_BETWEEN_CHECKS = 1 << 16;
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final int DEFAULT_SPLIT_DEPTH = 2;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
     private int size;
     private Dictionary dictionary;
-    private AtomicLong deadends = new AtomicLong();
-    private AtomicBoolean foundSolution = new AtomicBoolean(false);
-    private long start;
+    private int splitDepth;
+    private NogoodCache nogoods;
+    private final SearchMetrics metrics;
+    private File checkpoint;
+    private long checkpointInterval;
+    /** Held shared by workers while they advance their state, and exclusively while the frontier is copied. */
+    private final ReadWriteLock pauseLock = new ReentrantReadWriteLock();
 
-    public BruteForceCrossword(int size, File dictionary) throws IOException {
-          this.size = size;
-          this.dictionary = new Dictionary(size, dictionary);
+    /**
+     * State of one call to {@link #search(List, boolean, Deadline)}, shared by its tasks. Kept apart from the solver
+     * so that searches running at the same time, such as two {@link #solveAsync(Duration, Executor)} calls, do not
+     * stop each other or mix up their frontiers.
+     */
+    private static class Search {
+
+        /** Cancelled once a grid is found, which stops all tasks of the search. */
+        final Deadline deadline;
+        final NogoodCache nogoods;
+        /**
+         * States of the search tasks that have not finished, in the order the tasks were made, whose untried
+         * subtrees make up the frontier.
+         */
+        final Map<Long, SearchState> liveStates = new ConcurrentSkipListMap<>();
+        final AtomicLong taskCount = new AtomicLong();
+
+        Search(Deadline deadline, NogoodCache nogoods) {
+            this.deadline = deadline;
+            this.nogoods = nogoods;
+        }
     }
 
-    public String solve(boolean debug) {
-        this.start = System.currentTimeMillis();
-        String solution = solve("", debug);
-        System.err.println("Finished computing in " + (System.currentTimeMillis() - this.start) / 1000 + " seconds");
-        return solution;
+    /**
+     * Subtree of the search, explored depth-first by one worker. Untried letters are split off into new tasks
+     * while they are above the split depth, and further down whenever the pool has idle workers.
+     */
+    private class SearchTask extends RecursiveTask<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final SearchState state;
+        private final long id;
+
+        SearchTask(Search search, SearchState state) {
+            this.search = search;
+            this.state = state;
+            this.id = search.taskCount.getAndIncrement();
+            search.liveStates.put(this.id, state);
+        }
+
+        @Override
+        protected String compute() {
+            Deadline deadline = this.search.deadline;
+            List<SearchTask> forked = Lists.newArrayList();
+            String solution = null;
+            while (solution == null && !deadline.isCancelled()) {
+                pauseLock.readLock().lock();
+                try {
+                    int status = this.state.advance(NODES_BETWEEN_CHECKS);
+                    this.state.reportTo(metrics);
+                    if (status == SearchState.FOUND) {
+                        deadline.cancel();
+                        solution = this.state.getLetters();
+                    } else if (status == SearchState.EXHAUSTED) {
+                        break;
+                    } else if (deadline.isExpired()) {
+                        deadline.cancel();
+                    } else {
+                        SearchState split;
+                        while ((split = this.state.split(getSurplusQueuedTaskCount() <= 0 ? Integer.MAX_VALUE : splitDepth)) != null) {
+                            SearchTask task = new SearchTask(this.search, split);
+                            task.fork();
+                            forked.add(task);
+                        }
+                    }
+                } finally {
+                    pauseLock.readLock().unlock();
+                }
+            }
+            this.search.liveStates.remove(this.id);
+            for (SearchTask task : Lists.reverse(forked)) {
+                String found = task.join();
+                solution = solution == null ? found : solution;
+            }
+            return solution;
+        }
     }
 
     /**
-     * Find a crossword of the given size.
+     * Subtrees searched side by side, such as the frontier of a checkpoint. The first task runs in the current
+     * worker and the rest are left for idle workers to steal, so a single worker searches them in order.
      */
-    private String solve(String letters, boolean debug) {
-        if (this.foundSolution.get()) {
+    private class BatchTask extends RecursiveTask<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<SearchTask> tasks;
+
+        BatchTask(List<SearchTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected String compute() {
+            invokeAll(this.tasks);
+            for (SearchTask task : this.tasks) {
+                if (task.getRawResult() != null) {
+                    return task.getRawResult();
+                }
+            }
             return null;
-        } else if (letters.length() < this.size * this.size) {
-            List<Character> nextLetters = this.dictionary.getPlausibleNextChars(getHorizontal(letters), getVertical(letters));
-            Stream<Character> stream = letters.length() == 0 ? nextLetters.parallelStream() : nextLetters.stream();
-            Optional<String> solution = stream
-                .map(letter -> solve(letters + letter, debug))
-                .filter(letter -> letter != null)
-                .findAny();
-            if (solution.isPresent()) {
-                this.foundSolution.set(true);
-                return solution.get();
-            } else {
-                if (debug && this.deadends.incrementAndGet() % 10000000 == 0) {
-                    long now = System.currentTimeMillis();
-                    System.err.println("Total deadends " + deadends + ". " + (double) deadends.get() / ((now - start) / 1000.0) + " deadends per second.");
-                    System.err.println("Failed path " + letters);
+        }
+    }
+
+    /**
+     * Subtree of the search in which all grids are counted, split up like {@link SearchTask}. Each task keeps its
+     * own count, and the counts are added up when the tasks are joined.
+     */
+    private class CountTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SearchState state;
+
+        CountTask(SearchState state) {
+            this.state = state;
+        }
+
+        @Override
+        protected Long compute() {
+            List<CountTask> forked = Lists.newArrayList();
+            long count = 0;
+            while (true) {
+                int status = this.state.advance(NODES_BETWEEN_CHECKS);
+                this.state.reportTo(metrics);
+                if (status == SearchState.FOUND) {
+                    count++;
+                } else if (status == SearchState.EXHAUSTED) {
+                    break;
+                } else {
+                    SearchState split;
+                    while ((split = this.state.split(getSurplusQueuedTaskCount() <= 0 ? Integer.MAX_VALUE : splitDepth)) != null) {
+                        CountTask task = new CountTask(split);
+                        task.fork();
+                        forked.add(task);
+                    }
                 }
-                return null;
             }
-        } else {
-            return letters;
+            for (CountTask task : Lists.reverse(forked)) {
+                count += task.join();
+            }
+            return count;
         }
     }
 
-    private String getVertical(String letters) {
-        int prefix = letters.length() % this.size;
-        StringBuilder builder = new StringBuilder();
-        int currentIdx = prefix;
-        while (currentIdx < letters.length()) {
-            builder.append(letters.charAt(currentIdx));
-            currentIdx += this.size;
+    public BruteForceCrossword(int size, File dictionary) throws IOException {
+          this(size, DEFAULT_SPLIT_DEPTH, dictionary);
+    }
+
+    /**
+     * @param splitDepth Depth above which all untried letters are handed to other workers. Below it, work is only
+     *                   split off when there are idle workers.
+     */
+    public BruteForceCrossword(int size, int splitDepth, File dictionary) throws IOException {
+          this(size, splitDepth, null, dictionary);
+    }
+
+    /**
+     * @param nogoods Cache of states known to have no solution, shared by all workers. May be null, which
+     *                saves the cost of a lookup per node.
+     */
+    public BruteForceCrossword(int size, int splitDepth, NogoodCache nogoods, File dictionary) throws IOException {
+          this(splitDepth, nogoods, Dictionary.open(size, dictionary));
+    }
+
+    public BruteForceCrossword(Dictionary dictionary) {
+          this(DEFAULT_SPLIT_DEPTH, null, dictionary);
+    }
+
+    public BruteForceCrossword(int splitDepth, NogoodCache nogoods, Dictionary dictionary) {
+          this.size = dictionary.getSize();
+          this.splitDepth = splitDepth;
+          this.nogoods = nogoods;
+          this.dictionary = dictionary;
+          this.metrics = new SearchMetrics(this.size * this.size);
+    }
+
+    /**
+     * Write the frontier of the search to the file at the given interval while {@link #solve(boolean)} or
+     * {@link #resume(File, boolean)} runs, so that an interrupted search can be resumed from it. Each search writes
+     * its own frontier, so while searches run at the same time the file holds whichever was written last.
+     */
+    public void setCheckpoint(File checkpoint, long intervalMillis) {
+        this.checkpoint = checkpoint;
+        this.checkpointInterval = intervalMillis;
+    }
+
+    /**
+     * Find a crossword of the given size.
+     *
+     * @return The grid, or null if there is none or the calling thread was interrupted.
+     */
+    public String solve(boolean debug) {
+        return solve(debug, new Deadline());
+    }
+
+    /**
+     * Find a crossword, giving up once the deadline expires.
+     *
+     * @return The grid, or null if there is none, the deadline expired or the calling thread was interrupted.
+     */
+    String solve(boolean debug, Deadline deadline) {
+        return search(Collections.singletonList(new SearchState(this.dictionary, this.nogoods)), debug, deadline);
+    }
+
+    /**
+     * Find a crossword on the executor, giving up after the timeout. Cancelling the returned future stops the
+     * search within one slice of {@link #NODES_BETWEEN_CHECKS} nodes per worker. Searches of one solver may run at
+     * the same time, and each stops only at its own deadline.
+     *
+     * @return Future of the grid, or of nothing if there is none or none was found in time.
+     */
+    public CompletableFuture<Optional<String>> solveAsync(Duration timeout, Executor executor) {
+        Deadline deadline = new Deadline(timeout);
+        CompletableFuture<Optional<String>> future = CompletableFuture.supplyAsync(() ->
+                Optional.ofNullable(search(Collections.singletonList(new SearchState(this.dictionary, this.nogoods)), false, deadline)), executor);
+        future.whenComplete((grid, e) -> deadline.cancel());
+        return future;
+    }
+
+    /**
+     * Search only the grids that start with the prefix of letter indexes and continue with one of the letters in
+     * the mask. The prefix must be the start of some grid.
+     */
+    public String solve(int[] prefix, int letters, boolean debug) {
+        return search(Collections.singletonList(new SearchState(this.dictionary, this.nogoods, prefix, letters)), debug, new Deadline());
+    }
+
+    /**
+     * Dead ends met by all searches of this solver so far.
+     */
+    public long getDeadends() {
+        return this.metrics.getDeadends();
+    }
+
+    /**
+     * Counters of all searches of this solver so far.
+     */
+    public SearchMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Continue a search from a checkpoint written while solving with the same dictionary. The subtrees of the
+     * frontier are searched together, in the order the interrupted search would have continued with them. The
+     * nogood cache of the checkpoint replaces the cache of this solver.
+     */
+    public String resume(File checkpoint, boolean debug) throws IOException {
+        Checkpoint frontier = Checkpoint.read(checkpoint, this.dictionary);
+        this.nogoods = frontier.getNogoods();
+        List<SearchState> states = Lists.newArrayList();
+        for (SearchState.Subtree subtree : frontier.getFrontier()) {
+            states.add(new SearchState(this.dictionary, this.nogoods, subtree.prefix, subtree.letters));
         }
-        return builder.toString();
+        return search(states, debug, new Deadline());
     }
 
-    private String getHorizontal(String letters) {
-        return letters.substring(letters.length() - letters.length() % this.size);
+    private String search(List<SearchState> states, boolean debug, Deadline deadline) {
+        long start = System.currentTimeMillis();
+        Search search = new Search(deadline, this.nogoods);
+        List<SearchTask> tasks = Lists.newArrayList();
+        for (SearchState state : states) {
+            tasks.add(new SearchTask(search, state));
+        }
+        ScheduledExecutorService monitor = null;
+        if (this.checkpoint != null || debug) {
+            monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("search-monitor").build());
+            if (this.checkpoint != null) {
+                monitor.scheduleWithFixedDelay(() -> writeCheckpoint(search, debug), this.checkpointInterval, this.checkpointInterval, TimeUnit.MILLISECONDS);
+            }
+            if (debug) {
+                monitor.scheduleAtFixedRate(() -> System.err.println(this.metrics), REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+        String solution = null;
+        this.metrics.searchStarted();
+        try {
+            solution = ForkJoinPool.commonPool().submit(new BatchTask(tasks)).get();
+        } catch (InterruptedException e) {
+            deadline.cancel();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            this.metrics.searchFinished();
+            if (monitor != null) {
+                monitor.shutdownNow();
+            }
+        }
+        if (debug) {
+            System.err.println("Finished computing in " + (System.currentTimeMillis() - start) / 1000 + " seconds. " + this.metrics);
+        }
+        return solution;
+    }
+
+    /**
+     * Copy the frontier while the workers are paused between two slices of their search, and write it with the
+     * nogood cache once they have continued.
+     */
+    private void writeCheckpoint(Search search, boolean debug) {
+        List<SearchState.Subtree> frontier = Lists.newArrayList();
+        this.pauseLock.writeLock().lock();
+        try {
+            if (search.deadline.isCancelled()) {
+                return;
+            }
+            for (SearchState state : search.liveStates.values()) {
+                state.addFrontier(frontier);
+            }
+        } finally {
+            this.pauseLock.writeLock().unlock();
+        }
+        try {
+            new Checkpoint(frontier, search.nogoods).write(this.checkpoint, this.dictionary);
+            if (debug) {
+                System.err.println("Wrote checkpoint with " + frontier.size() + " subtrees to " + this.checkpoint);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write checkpoint to " + this.checkpoint + ": " + e);
+        }
+    }
+
+    /**
+     * All grids of the size, found lazily as the stream is consumed. The stream can be run in parallel, in which
+     * case the search is split between the threads. Grids are not ordered.
+     */
+    public Stream<String> solutions() {
+        return StreamSupport.stream(new SolutionSpliterator(new SearchState(this.dictionary, this.nogoods)), false);
+    }
+
+    /**
+     * Number of grids of the size. Searches the whole tree without building the grids.
+     */
+    public long count(boolean debug) {
+        long start = System.currentTimeMillis();
+        long count;
+        this.metrics.searchStarted();
+        try {
+            count = ForkJoinPool.commonPool().invoke(new CountTask(new SearchState(this.dictionary, this.nogoods)));
+        } finally {
+            this.metrics.searchFinished();
+        }
+        if (debug) {
+            System.err.println("Finished counting in " + (System.currentTimeMillis() - start) / 1000 + " seconds. " + this.metrics);
+        }
+        return count;
     }
 
     public static void main(String[] args) throws IOException {
         int size = Integer.parseInt(args[1]);
-        BruteForceCrossword cw = new BruteForceCrossword(size, new File(args[0]));
-        String grid = cw.solve(true);
+        NogoodCache nogoods = args.length > 2 && Integer.parseInt(args[2]) > 0 ? new NogoodCache(Integer.parseInt(args[2])) : null;
+        BruteForceCrossword cw = new BruteForceCrossword(size, DEFAULT_SPLIT_DEPTH, nogoods, new File(args[0]));
+        String grid;
+        if (args.length > 3) {
+            File checkpoint = new File(args[3]);
+            cw.setCheckpoint(checkpoint, DEFAULT_CHECKPOINT_INTERVAL);
+            grid = checkpoint.exists() ? cw.resume(checkpoint, true) : cw.solve(true);
+        } else {
+            grid = cw.solve(true);
+        }
         if (grid != null) {
             for (int i = 0; i < grid.length(); i++) {
                 if (i % size == 0) {
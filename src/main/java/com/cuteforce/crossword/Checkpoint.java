@@ -0,0 +1,101 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Frontier of an interrupted search: the subtrees that were not searched yet, and the nogood cache if the search
+ * used one. The search is continued by searching the subtrees with the cache, in the order they are listed.
+ *
+ * The file is gzipped and holds a header with the grid size and word count of the dictionary, the subtrees as
+ * letter index prefixes with a letter mask, and the cache keys. It is written to a temporary file first and
+ * moved over the previous checkpoint, so a crash while writing leaves the previous one intact.
+ */
+final class Checkpoint {
+
+    private static final int MAGIC = 0x43574350;
+    private static final int VERSION = 1;
+
+    private final List<SearchState.Subtree> frontier;
+    private final NogoodCache nogoods;
+
+    Checkpoint(List<SearchState.Subtree> frontier, NogoodCache nogoods) {
+        this.frontier = frontier;
+        this.nogoods = nogoods;
+    }
+
+    List<SearchState.Subtree> getFrontier() {
+        return this.frontier;
+    }
+
+    /**
+     * Nogood cache of the search, or null if it had none.
+     */
+    NogoodCache getNogoods() {
+        return this.nogoods;
+    }
+
+    void write(File checkpoint, Dictionary dictionary) throws IOException {
+        File temporary = new File(checkpoint.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporary))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dictionary.getSize());
+            out.writeInt(dictionary.getWordCount());
+            out.writeInt(this.frontier.size());
+            for (SearchState.Subtree subtree : this.frontier) {
+                out.writeShort(subtree.prefix.length);
+                for (int letter : subtree.prefix) {
+                    out.writeByte(letter);
+                }
+                out.writeInt(subtree.letters);
+            }
+            out.writeBoolean(this.nogoods != null);
+            if (this.nogoods != null) {
+                this.nogoods.write(out);
+            }
+        }
+        Files.move(temporary.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a checkpoint of a search with the dictionary.
+     */
+    static Checkpoint read(File checkpoint, Dictionary dictionary) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(checkpoint))))) {
+            Preconditions.checkArgument(in.readInt() == MAGIC, checkpoint + " is not a checkpoint.");
+            int version = in.readInt();
+            Preconditions.checkArgument(version == VERSION, "Unsupported checkpoint version " + version + ".");
+            int size = in.readInt();
+            int words = in.readInt();
+            Preconditions.checkArgument(size == dictionary.getSize() && words == dictionary.getWordCount(),
+                    checkpoint + " is for a search over " + words + " words of length " + size + ", not "
+                    + dictionary.getWordCount() + " words of length " + dictionary.getSize() + ".");
+            int subtrees = in.readInt();
+            List<SearchState.Subtree> frontier = Lists.newArrayListWithCapacity(subtrees);
+            for (int i = 0; i < subtrees; i++) {
+                int[] prefix = new int[in.readShort()];
+                for (int j = 0; j < prefix.length; j++) {
+                    prefix[j] = in.readByte();
+                }
+                frontier.add(new SearchState.Subtree(prefix, in.readInt()));
+            }
+            NogoodCache nogoods = in.readBoolean() ? NogoodCache.read(in) : null;
+            return new Checkpoint(frontier, nogoods);
+        }
+    }
+}
@@ -1,22 +1,24 @@
 package com.cuteforce.crossword;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.MoreObjects;
 import com.google.common.collect.ComparisonChain;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Comparator;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class Crossword {
 
+    private static final int BACKTRACKS_BETWEEN_CHECKS = 1 << 12;
+    private static final long REPORT_INTERVAL = 100000;
+
     private int size;
     private Dictionary dictionary;
-    private long bloomfiltersize;
+    private NogoodCache nogoods;
+    private SearchMetrics metrics;
 
     public static class LetterProb {
         public final double probability;
@@ -38,67 +40,115 @@ public class Crossword {
         };
     }
 
-    public Crossword(int size, long bloomfilterSize,  File dictionary) throws IOException {
-        this.size = size;
-        this.dictionary = new Dictionary(size, dictionary);
-        this.bloomfiltersize = bloomfilterSize;
+    public Crossword(int size, File dictionary) throws IOException {
+        this(size, new NogoodCache(), dictionary);
+    }
+
+    /**
+     * @param nogoods Cache of states known to have no solution. May be shared with other solvers using the same
+     *                dictionary file.
+     */
+    public Crossword(int size, NogoodCache nogoods, File dictionary) throws IOException {
+        this(nogoods, Dictionary.open(size, dictionary));
+    }
+
+    public Crossword(Dictionary dictionary) {
+        this(new NogoodCache(), dictionary);
+    }
+
+    public Crossword(NogoodCache nogoods, Dictionary dictionary) {
+        this.size = dictionary.getSize();
+        this.dictionary = dictionary;
+        this.nogoods = nogoods;
+        this.metrics = new SearchMetrics(this.size * this.size);
     }
 
     /**
      * Find a crossword of the given size.
+     *
+     * @return The grid, or null if there is none or the thread was interrupted.
      */
     public String solve(boolean debug) {
-        BloomFilter<String> failedPaths = BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), this.bloomfiltersize, 0.002);
-        String letters = "";
-        int backtracks = 0;
-        long start = System.currentTimeMillis();
-        while (letters.length() < this.size * this.size) {
-            Character nextLetter = getNextLetter(letters, failedPaths);
-            if (nextLetter == null) {
-                if (debug && ++backtracks % 100000 == 0) {
-                    long now = System.currentTimeMillis();
-                    System.err.println("Total backtracks " + backtracks + ". " + (double) backtracks / ((now - start) / 1000.0) + " backtracks per second.");
-                    System.err.println("Failed path " + letters);
-                }
-                failedPaths.put(letters.toString());
-                if (letters.length() > 0) {
-                    letters = letters.substring(0, letters.length() - 1);
-                    continue;
+        return solve(debug, new Deadline());
+    }
+
+    /**
+     * Find a crossword on the executor, giving up after the timeout. Cancelling the returned future stops the
+     * search within a few thousand backtracks.
+     *
+     * @return Future of the grid, or of nothing if there is none or none was found in time.
+     */
+    public CompletableFuture<Optional<String>> solveAsync(Duration timeout, Executor executor) {
+        Deadline deadline = new Deadline(timeout);
+        CompletableFuture<Optional<String>> future = CompletableFuture.supplyAsync(() -> Optional.ofNullable(solve(false, deadline)), executor);
+        future.whenComplete((grid, e) -> deadline.cancel());
+        return future;
+    }
+
+    /**
+     * Find a crossword, giving up once the deadline expires.
+     *
+     * @return The grid, or null if there is none or the deadline expired.
+     */
+    String solve(boolean debug, Deadline deadline) {
+        SearchState state = new SearchState(this.dictionary, this.nogoods);
+        int[][] letterOrders = new int[this.size * this.size][];
+        int[] nextLetter = new int[this.size * this.size];
+        letterOrders[0] = this.dictionary.getLetterOrder(state.getRowNode(), state.getColumnNode());
+        long backtracks = 0;
+        this.metrics.searchStarted();
+        try {
+            while (!state.isComplete()) {
+                int depth = state.getDepth();
+                if (nextLetter[depth] < letterOrders[depth].length) {
+                    state.push(letterOrders[depth][nextLetter[depth]++]);
+                    state.countVisited();
+                    if (state.isComplete()) {
+                        break;
+                    } else if (!state.isViable() || state.isNogood()) {
+                        state.pop();
+                    } else {
+                        letterOrders[depth + 1] = this.dictionary.getLetterOrder(state.getRowNode(), state.getColumnNode());
+                        nextLetter[depth + 1] = 0;
+                    }
                 } else {
-                    return null;
+                    state.countDeadend();
+                    if (++backtracks % BACKTRACKS_BETWEEN_CHECKS == 0) {
+                        state.reportTo(this.metrics);
+                        if (deadline.isExpired()) {
+                            return null;
+                        }
+                    }
+                    if (debug && backtracks % REPORT_INTERVAL == 0) {
+                        System.err.println(this.metrics);
+                        System.err.println("Failed path " + state.getLetters());
+                    }
+                    this.nogoods.add(state.getNogoodKey());
+                    if (depth > 0) {
+                        state.pop();
+                    } else {
+                        return null;
+                    }
                 }
-            } else {
-                letters += nextLetter;
             }
+            return state.getLetters();
+        } finally {
+            state.reportTo(this.metrics);
+            this.metrics.searchFinished();
         }
-        return letters;
     }
 
-    private Character getNextLetter(final String letters, BloomFilter<String> failedPaths) {
-        int prefix = letters.length() % this.size;
-        Map<Character, Double> horizontalProbs = this.dictionary.getProb(letters.substring(letters.length() - prefix));
-        String vertical = "";
-        int currentIdx = prefix;
-        while (currentIdx < letters.length()) {
-            vertical += letters.charAt(currentIdx);
-            currentIdx += this.size;
-        }
-
-        Map<Character, Double> verticalProbs = this.dictionary.getProb(vertical);
-        Optional<LetterProb> letterIfFound = horizontalProbs.keySet()
-            .stream()
-            .map(letter -> new LetterProb(horizontalProbs.get(letter) * MoreObjects.firstNonNull(verticalProbs.get(letter), 0.0), letter))
-            .filter(letterProb -> letterProb.probability > 0.0)
-            .sorted(LetterProb.LETTERPROB_COMPARATOR)
-            .filter(letterProb -> !failedPaths.mightContain(letters + letterProb.character))
-            .findFirst();
-        return (letterIfFound.isPresent() ? letterIfFound.get().character : null);
+    /**
+     * Counters of all searches of this solver so far.
+     */
+    public SearchMetrics getMetrics() {
+        return this.metrics;
     }
 
     public static void main(String[] args) throws IOException {
         int size = Integer.parseInt(args[1]);
-        long bloomfilterSize = Long.parseLong(args[2]);
-        Crossword cw = new Crossword(size, bloomfilterSize, new File(args[0]));
+        NogoodCache nogoods = args.length > 2 ? new NogoodCache(Integer.parseInt(args[2])) : new NogoodCache();
+        Crossword cw = new Crossword(size, nogoods, new File(args[0]));
         String grid = cw.solve(true);
         if (grid != null) {
             for (int i = 0; i < grid.length(); i++) {
@@ -0,0 +1,50 @@
+package com.cuteforce.crossword;
+
+import java.time.Duration;
+
+/**
+ * When a search has to stop: at a point in time, or when it is cancelled. Solvers poll {@link #isExpired()} every
+ * few thousand nodes, so a search stops shortly after the deadline.
+ *
+ * Cancellation is a volatile flag, so any thread can stop a search, such as the one that cancels the future of
+ * solveAsync. Interrupts are only seen by the thread that polls: a solver that searches on the calling thread
+ * stops when it is interrupted, but one that searches on fork/join workers has to cancel the deadline when its
+ * caller is interrupted.
+ */
+final class Deadline {
+
+    private final boolean bounded;
+    private final long end;
+    private volatile boolean cancelled;
+
+    /**
+     * Deadline that only expires when cancelled, or when the polling thread is interrupted.
+     */
+    Deadline() {
+        this.bounded = false;
+        this.end = 0;
+    }
+
+    Deadline(Duration timeout) {
+        this.bounded = true;
+        this.end = System.nanoTime() + timeout.toNanos();
+    }
+
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Whether {@link #cancel()} was called. Cheaper than {@link #isExpired()}, which also reads the clock.
+     */
+    boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Whether the time is up, the deadline was cancelled, or the current thread is interrupted.
+     */
+    boolean isExpired() {
+        return this.cancelled || (this.bounded && System.nanoTime() - this.end >= 0) || Thread.currentThread().isInterrupted();
+    }
+}
@@ -1,116 +1,515 @@
 package com.cuteforce.crossword;
 
-import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Read-only trie of all words of a given length.
+ *
+ * The words are first loaded into a {@link TrieBuilder}, which is then frozen into flat primitive arrays.
+ * Nodes are numbered in breadth-first order, so the daughters of a node are stored next to each other. Each
+ * node holds a 32-bit mask of its daughter letters, and a daughter is found by counting the bits below its
+ * letter in that mask.
+ *
+ * A dictionary compiled with {@link #save(File)} can be memory-mapped with {@link #load(File)} and searched
+ * off-heap without parsing the word list again.
+ */
 public class Dictionary {
 
-    public static class Node {
-        public final AtomicInteger daughterFreq;
-        public final Map<Character, Node> daughters;
-        public final Character letter;
+    /**
+     * Node id returned when a prefix is not in the dictionary.
+     */
+    public static final int NONE = -1;
+
+    public static final int ROOT = 0;
+
+    private static final int LETTER_ORDER_CACHE_BITS = 16;
+
+    private static final int MAGIC = 0x43574454;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
 
-        public Node(Character letter) {
-            this.letter = letter;
-            this.daughters = Maps.newHashMap();
-            this.daughterFreq = new AtomicInteger(1);
+    private static final class LetterOrder {
+        final long key;
+        final int[] letters;
+
+        LetterOrder(long key, int[] letters) {
+            this.key = key;
+            this.letters = letters;
         }
+    }
+
+    private final int size;
+    private final char[] alphabet;
+    private final TrieStorage storage;
+    private final AtomicReferenceArray<LetterOrder> letterOrders = new AtomicReferenceArray<>(1 << LETTER_ORDER_CACHE_BITS);
+
+    /**
+     * Assumes a dictionary file of type
+     * cars.car
+     * men.man
+     * etc
+     */
+    public Dictionary(int size, File dictionaryName) throws IOException {
+        this(TrieBuilder.read(dictionaryName, size));
+    }
+
+    /**
+     * Freeze the words added to the builder.
+     */
+    Dictionary(TrieBuilder builder) {
+        this.size = builder.getSize();
+        this.alphabet = getAlphabet(builder);
+        Preconditions.checkState(this.alphabet.length <= Integer.SIZE,
+                "Dictionary uses " + this.alphabet.length + " different letters, at most " + Integer.SIZE + " are supported.");
 
-        /**
-         * Root node.
-         */
-        public Node() {
-            this.letter = null;
-            this.daughters = Maps.newHashMap();
-            this.daughterFreq = new AtomicInteger(1);
+        int nodes = builder.getNodeCount();
+        int[] daughterMask = new int[nodes];
+        int[] firstDaughter = new int[nodes];
+        int[] breadthFirst = getNodesBreadthFirst(builder);
+        int nextId = 1;
+        for (int id = 0; id < nodes; id++) {
+            int mask = 0;
+            for (int daughter = builder.getFirstDaughter(breadthFirst[id]); daughter != TrieBuilder.NONE; daughter = builder.getNextSister(daughter)) {
+                mask |= 1 << Arrays.binarySearch(this.alphabet, builder.getLetter(daughter));
+            }
+            daughterMask[id] = mask;
+            firstDaughter[id] = nextId;
+            nextId += Integer.bitCount(mask);
         }
+        int[] frequency = getFrequencies(daughterMask, firstDaughter);
 
-        public void inject(String suffix) {
-            this.daughterFreq.incrementAndGet();
-            if (suffix.isEmpty()) {
-                return;
-            } else {
-                Character next = suffix.charAt(0);
-                String tail = suffix.substring(1);
-                Node daughterNode = this.daughters.get(next);
-                if (daughterNode == null) {
-                    daughterNode = new Node(next);
-                    this.daughters.put(next, daughterNode);
+        int[] positionOffset = new int[nodes];
+        int[] positionMasks = getPositionMasks(size, daughterMask, firstDaughter, positionOffset);
+        float[] sortedProbability = new float[nodes];
+        byte[] sortedLetter = new byte[nodes];
+        sortProbabilities(daughterMask, firstDaughter, frequency, sortedProbability, sortedLetter);
+
+        this.storage = new HeapTrieStorage(daughterMask, firstDaughter, frequency, positionOffset, positionMasks,
+                sortedProbability, sortedLetter);
+    }
+
+    /**
+     * Dictionary in the binary format written by {@link #save(File)}, searched in place.
+     */
+    private Dictionary(ByteBuffer compiled) {
+        Preconditions.checkArgument(compiled.getInt() == MAGIC, "Not a compiled dictionary.");
+        int version = compiled.getInt();
+        Preconditions.checkArgument(version == VERSION, "Unsupported compiled dictionary version " + version + ".");
+        this.size = compiled.getInt();
+        int letters = compiled.getInt();
+        int nodes = compiled.getInt();
+        int positionMasks = compiled.getInt();
+        this.alphabet = new char[letters];
+        for (int i = 0; i < letters; i++) {
+            this.alphabet[i] = compiled.getChar();
+        }
+        compiled.position(align(compiled.position()));
+        this.storage = new MappedTrieStorage(compiled, nodes, positionMasks);
+    }
+
+    /**
+     * Open a word list, a dictionary compiled with {@link #compile(File, File, int...)} or a directory of compiled
+     * dictionaries.
+     */
+    public static Dictionary open(int size, File dictionaryName) throws IOException {
+        File file = dictionaryName.isDirectory() ? new File(dictionaryName, getCompiledName(size)) : dictionaryName;
+        if (isCompiled(file)) {
+            Dictionary dictionary = load(file);
+            Preconditions.checkArgument(dictionary.getSize() == size,
+                    file + " holds words of length " + dictionary.getSize() + ", not " + size + ".");
+            return dictionary;
+        }
+        return new Dictionary(size, file);
+    }
+
+    /**
+     * Memory-map a compiled dictionary. The trie is searched directly in the mapped file, so loading does not
+     * depend on the size of the word list, and solver processes on one host share the pages.
+     */
+    public static Dictionary load(File compiled) throws IOException {
+        try (FileChannel channel = FileChannel.open(compiled.toPath(), StandardOpenOption.READ)) {
+            return new Dictionary(channel.map(MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Write the frozen trie in a binary format that {@link #load(File)} can map.
+     */
+    public void save(File compiled) throws IOException {
+        int nodes = this.storage.getNodeCount();
+        int positionMasks = this.storage.getPositionMaskCount();
+        long length = align(HEADER_BYTES + this.alphabet.length * Character.BYTES) + TrieStorage.getByteSize(nodes, positionMasks);
+        Files.deleteIfExists(compiled.toPath());
+        try (FileChannel channel = FileChannel.open(compiled.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(this.size)
+                .putInt(this.alphabet.length)
+                .putInt(nodes)
+                .putInt(positionMasks);
+            for (char letter : this.alphabet) {
+                buffer.putChar(letter);
+            }
+            buffer.position(align(buffer.position()));
+            this.storage.write(buffer);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Compile the words of each size in the word list to a file in the directory.
+     */
+    public static void compile(File dictionaryName, File directory, int... sizes) throws IOException {
+        for (int size : sizes) {
+            new Dictionary(size, dictionaryName).save(new File(directory, getCompiledName(size)));
+        }
+    }
+
+    public static String getCompiledName(int size) {
+        return "dictionary." + size + ".bin";
+    }
+
+    private static boolean isCompiled(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            return channel.read(magic) == Integer.BYTES && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    private static int align(int position) {
+        return (position + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    /**
+     * For every node, the letters that can appear at each later position in a word below it. The masks of a
+     * node are stored next to each other from positionOffset[node] + depth, so that positionOffset[node] +
+     * position indexes the mask of an absolute position in the word.
+     */
+    private static int[] getPositionMasks(int size, int[] daughterMask, int[] firstDaughter, int[] positionOffset) {
+        int nodes = daughterMask.length;
+        int[] depth = new int[nodes];
+        int total = 0;
+        for (int node = 0; node < nodes; node++) {
+            for (int daughter = firstDaughter[node]; daughter < firstDaughter[node] + Integer.bitCount(daughterMask[node]); daughter++) {
+                depth[daughter] = depth[node] + 1;
+            }
+            positionOffset[node] = total - depth[node];
+            total += size - depth[node];
+        }
+
+        int[] masks = new int[total];
+        for (int node = nodes - 1; node >= 0; node--) {
+            if (depth[node] < size) {
+                masks[positionOffset[node] + depth[node]] = daughterMask[node];
+                for (int daughter = firstDaughter[node]; daughter < firstDaughter[node] + Integer.bitCount(daughterMask[node]); daughter++) {
+                    for (int position = depth[node] + 1; position < size; position++) {
+                        masks[positionOffset[node] + position] |= masks[positionOffset[daughter] + position];
+                    }
                 }
-                daughterNode.inject(tail);
             }
         }
+        return masks;
+    }
 
-        public int getFrequency(String prefix) {
-            if (prefix.isEmpty()) {
-                return this.daughterFreq.get();
+    /**
+     * Probabilities of the daughters of every node, sorted with the most probable first. Entry
+     * firstDaughter[node] + i holds the i-th most probable daughter of the node, so the tables line up with the
+     * daughter ids.
+     */
+    private static void sortProbabilities(int[] daughterMask, int[] firstDaughter, int[] frequency, float[] sortedProbability, byte[] sortedLetter) {
+        for (int node = 0; node < daughterMask.length; node++) {
+            int first = firstDaughter[node];
+            int daughters = Integer.bitCount(daughterMask[node]);
+            double totalFreq = 0;
+            for (int daughter = first; daughter < first + daughters; daughter++) {
+                totalFreq += frequency[daughter];
+            }
+            int mask = daughterMask[node];
+            for (int i = 0; i < daughters; i++) {
+                int letter = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                float probability = (float) (frequency[first + i] / totalFreq);
+                int j = first + i;
+                while (j > first && sortedProbability[j - 1] < probability) {
+                    sortedProbability[j] = sortedProbability[j - 1];
+                    sortedLetter[j] = sortedLetter[j - 1];
+                    j--;
+                }
+                sortedProbability[j] = probability;
+                sortedLetter[j] = (byte) letter;
+            }
+        }
+    }
+
+    /**
+     * One more than the number of words below every node. Each word ends in its own leaf, since all words have
+     * the same length.
+     */
+    private static int[] getFrequencies(int[] daughterMask, int[] firstDaughter) {
+        int[] frequency = new int[daughterMask.length];
+        for (int node = daughterMask.length - 1; node >= 0; node--) {
+            int daughters = Integer.bitCount(daughterMask[node]);
+            if (daughters == 0) {
+                frequency[node] = node == ROOT ? 1 : 2;
             } else {
-                Node daughterNode = this.daughters.get(prefix.charAt(0));
-                return (daughterNode == null) ? 0 : daughterNode.getFrequency(prefix.substring(1));
+                frequency[node] = 1;
+                for (int daughter = firstDaughter[node]; daughter < firstDaughter[node] + daughters; daughter++) {
+                    frequency[node] += frequency[daughter] - 1;
+                }
             }
         }
+        return frequency;
+    }
 
-        public Node getNode(String prefix) {
-            Node daughter = this.daughters.get(prefix.charAt(0));
-            prefix = prefix.substring(1);
-            return  (prefix.isEmpty() || daughter == null) ? daughter : daughter.getNode(prefix);
+    private static char[] getAlphabet(TrieBuilder builder) {
+        BitSet letters = new BitSet(Character.MAX_VALUE + 1);
+        for (int node = TrieBuilder.ROOT + 1; node < builder.getNodeCount(); node++) {
+            letters.set(builder.getLetter(node));
+        }
+        char[] alphabet = new char[letters.cardinality()];
+        for (int i = 0, letter = letters.nextSetBit(0); letter >= 0; i++, letter = letters.nextSetBit(letter + 1)) {
+            alphabet[i] = (char) letter;
         }
+        return alphabet;
     }
 
-    private Node root;
+    /**
+     * Builder node ids in breadth-first order, with the daughters of each node sorted by letter.
+     */
+    private static int[] getNodesBreadthFirst(TrieBuilder builder) {
+        int[] nodes = new int[builder.getNodeCount()];
+        nodes[0] = TrieBuilder.ROOT;
+        int count = 1;
+        for (int i = 0; i < count; i++) {
+            int first = count;
+            for (int daughter = builder.getFirstDaughter(nodes[i]); daughter != TrieBuilder.NONE; daughter = builder.getNextSister(daughter)) {
+                int j = count++;
+                while (j > first && builder.getLetter(nodes[j - 1]) > builder.getLetter(daughter)) {
+                    nodes[j] = nodes[j - 1];
+                    j--;
+                }
+                nodes[j] = daughter;
+            }
+        }
+        return nodes;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public int getAlphabetSize() {
+        return this.alphabet.length;
+    }
+
+    public char getLetter(int letterIndex) {
+        return this.alphabet[letterIndex];
+    }
 
     /**
-     * Assumes a dictionary file of type
-     * cars.car
-     * men.man
-     * etc
+     * Index of the letter in the alphabet, or -1 if no word contains it.
      */
-    public Dictionary(int size, File dictionaryName) throws IOException {
-        this.root = new Node();
-        Files.lines(dictionaryName.toPath(), Charsets.UTF_8)
-            .flatMap(Pattern.compile("\\.")::splitAsStream)
-            .map(String::toLowerCase)
-            .distinct()
-            .filter(word -> word.length() == size)
-            .forEach(word -> this.root.inject(word));
+    public int letterIndex(char letter) {
+        int index = Arrays.binarySearch(this.alphabet, letter);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Mask with bit i set if the node has a daughter for letter i.
+     */
+    public int getDaughterMask(int node) {
+        return this.storage.getDaughterMask(node);
+    }
+
+    /**
+     * Mask with bit i set if letter i is at the given position in some word below the node. The position counts
+     * from the start of the word and must not be before the depth of the node.
+     */
+    public int getPositionMask(int node, int position) {
+        return this.storage.getPositionMask(node, position);
+    }
+
+    /**
+     * Whether every position from first to the end of the word can still get a letter that is both below the node
+     * at that position and in masks[position]. Checks all positions at once, without branching per position.
+     */
+    boolean intersectsPositionMasks(int node, int[] masks, int first) {
+        return this.storage.intersectsPositionMasks(node, masks, first);
+    }
+
+    /**
+     * Daughter of the node for the given letter index, or {@link #NONE}.
+     */
+    public int getDaughter(int node, int letterIndex) {
+        int mask = this.storage.getDaughterMask(node);
+        int bit = 1 << letterIndex;
+        if ((mask & bit) == 0) {
+            return NONE;
+        }
+        return this.storage.getFirstDaughter(node) + Integer.bitCount(mask & (bit - 1));
+    }
+
+    /**
+     * One more than the number of words below the node.
+     */
+    public int getFrequency(int node) {
+        return this.storage.getFrequency(node);
+    }
+
+    public int getWordCount() {
+        return this.storage.getFrequency(ROOT) - 1;
+    }
+
+    /**
+     * Letter indexes of all words in alphabetical order, size letters per word.
+     */
+    public byte[] getWordLetters() {
+        byte[] letters = new byte[getWordCount() * this.size];
+        int[] nodes = new int[this.size + 1];
+        int[] masks = new int[this.size + 1];
+        byte[] prefix = new byte[this.size];
+        masks[0] = this.storage.getDaughterMask(ROOT);
+        int depth = 0;
+        int word = 0;
+        while (depth >= 0) {
+            if (depth == this.size) {
+                System.arraycopy(prefix, 0, letters, word++ * this.size, this.size);
+                depth--;
+            } else if (masks[depth] == 0) {
+                depth--;
+            } else {
+                int letter = Integer.numberOfTrailingZeros(masks[depth]);
+                masks[depth] &= masks[depth] - 1;
+                prefix[depth] = (byte) letter;
+                nodes[depth + 1] = getDaughter(nodes[depth], letter);
+                masks[depth + 1] = this.storage.getDaughterMask(nodes[depth + 1]);
+                depth++;
+            }
+        }
+        return letters;
+    }
+
+    /**
+     * Node for the prefix, or {@link #NONE} if no word starts with it.
+     */
+    public int getNode(String prefix) {
+        int node = ROOT;
+        for (int i = 0; i < prefix.length() && node != NONE; i++) {
+            int letterIndex = letterIndex(prefix.charAt(i));
+            node = letterIndex < 0 ? NONE : getDaughter(node, letterIndex);
+        }
+        return node;
     }
 
     public List<Character> getPlausibleNextChars(String prefix1, String prefix2) {
-        Node node1 = prefix1.equals("") ? this.root : this.root.getNode(prefix1);
-        Node node2 = prefix2.equals("") ? this.root : this.root.getNode(prefix2);
-        if (node1 == null || node2 == null) {
+        int node1 = getNode(prefix1);
+        int node2 = getNode(prefix2);
+        if (node1 == NONE || node2 == NONE) {
             return ImmutableList.of();
         } else {
-            return node1.daughters.keySet().stream()
-                .filter(nextChar -> node2.daughters.containsKey(nextChar))
-                .collect(Collectors.toList());
+            List<Character> nextChars = Lists.newArrayList();
+            for (int mask = this.storage.getDaughterMask(node1) & this.storage.getDaughterMask(node2); mask != 0; mask &= mask - 1) {
+                nextChars.add(this.alphabet[Integer.numberOfTrailingZeros(mask)]);
             }
+            return nextChars;
         }
+    }
 
     public Map<Character, Double> getProb(String prefix) {
-        Node node = prefix.equals("") ? this.root : this.root.getNode(prefix);
-        if (node != null) {
-            double totalFreq = node.daughters.entrySet()
-                    .stream()
-                    .mapToInt(entry -> entry.getValue().daughterFreq.get())
-                    .sum();
-
-            return node.daughters.entrySet()
-                .stream()
-                .collect(Collectors.toMap(Entry::getKey, entry -> entry.getValue().daughterFreq.get() / totalFreq));
+        int node = getNode(prefix);
+        if (node != NONE) {
+            Map<Character, Double> probs = Maps.newHashMap();
+            for (int mask = this.storage.getDaughterMask(node); mask != 0; mask &= mask - 1) {
+                int letterIndex = Integer.numberOfTrailingZeros(mask);
+                probs.put(this.alphabet[letterIndex], getProb(node, letterIndex));
+            }
+            return probs;
         }
         return ImmutableMap.of();
     }
+
+    /**
+     * Share of the words below the node that continue with the letter.
+     */
+    public double getProb(int node, int letterIndex) {
+        int first = this.storage.getFirstDaughter(node);
+        for (int i = first; i < first + Integer.bitCount(this.storage.getDaughterMask(node)); i++) {
+            if (this.storage.getSortedLetter(i) == letterIndex) {
+                return this.storage.getSortedProbability(i);
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Letters that continue both nodes, ordered by the product of their probabilities, most probable first, and
+     * then alphabetically. The returned array is shared and must not be modified.
+     */
+    int[] getLetterOrder(int horizontal, int vertical) {
+        long key = ((long) horizontal << Integer.SIZE) | vertical;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - LETTER_ORDER_CACHE_BITS));
+        LetterOrder cached = this.letterOrders.get(slot);
+        if (cached != null && cached.key == key) {
+            return cached.letters;
+        }
+
+        double[] verticalProbability = new double[Integer.SIZE];
+        int verticalFirst = this.storage.getFirstDaughter(vertical);
+        for (int i = verticalFirst; i < verticalFirst + Integer.bitCount(this.storage.getDaughterMask(vertical)); i++) {
+            verticalProbability[this.storage.getSortedLetter(i)] = this.storage.getSortedProbability(i);
+        }
+        int common = this.storage.getDaughterMask(horizontal) & this.storage.getDaughterMask(vertical);
+        int[] letters = new int[Integer.bitCount(common)];
+        double[] probabilities = new double[letters.length];
+        int count = 0;
+        int horizontalFirst = this.storage.getFirstDaughter(horizontal);
+        for (int i = horizontalFirst; i < horizontalFirst + Integer.bitCount(this.storage.getDaughterMask(horizontal)); i++) {
+            int letter = this.storage.getSortedLetter(i);
+            if ((common & (1 << letter)) != 0) {
+                double probability = this.storage.getSortedProbability(i) * verticalProbability[letter];
+                int j = count++;
+                while (j > 0 && (probabilities[j - 1] < probability || (probabilities[j - 1] == probability && letters[j - 1] > letter))) {
+                    probabilities[j] = probabilities[j - 1];
+                    letters[j] = letters[j - 1];
+                    j--;
+                }
+                probabilities[j] = probability;
+                letters[j] = letter;
+            }
+        }
+        this.letterOrders.set(slot, new LetterOrder(key, letters));
+        return letters;
+    }
+
+    /**
+     * Compile a word list: Dictionary <word list> <output directory> <size>...
+     */
+    public static void main(String[] args) throws IOException {
+        int[] sizes = new int[args.length - 2];
+        for (int i = 2; i < args.length; i++) {
+            sizes[i - 2] = Integer.parseInt(args[i]);
+        }
+        compile(new File(args[0]), new File(args[1]), sizes);
+    }
 }
@@ -0,0 +1,253 @@
+package com.cuteforce.crossword;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Crossword solver that propagates every placed letter to the whole grid.
+ *
+ * Each row and column is a slot with a domain: a bitset over all dictionary words that still fit the letters
+ * placed in it. Placing a letter narrows the domain of its row and its column, and from the remaining words the
+ * letters possible in every cell of that row and column are recomputed. The search fails as soon as a cell has
+ * no candidate letter left, and always fills the empty cell with the fewest candidates next.
+ */
+public class ForwardCheckingCrossword {
+
+    private static final long REPORT_INTERVAL = 100000;
+
+    private int size;
+    private Dictionary dictionary;
+    private int alphabetSize;
+    private int blocks;
+    private byte[] wordLetters;
+    private long[][] wordsWithLetter;
+
+    private long[][] domains;
+    private int[] domainFrom;
+    private int[] domainTo;
+    private int[][] slotLetters;
+    private char[] grid;
+    private long[][] trailDomains;
+    private int[][] trailRanges;
+    private int[][] trailLetters;
+    private long deadends;
+    private long start;
+
+    public ForwardCheckingCrossword(int size, File dictionary) throws IOException {
+        this(Dictionary.open(size, dictionary));
+    }
+
+    public ForwardCheckingCrossword(Dictionary dictionary) {
+        this.size = dictionary.getSize();
+        this.dictionary = dictionary;
+        this.alphabetSize = this.dictionary.getAlphabetSize();
+        this.wordLetters = this.dictionary.getWordLetters();
+        int words = this.dictionary.getWordCount();
+        this.blocks = (words + Long.SIZE - 1) / Long.SIZE;
+        this.wordsWithLetter = new long[size * this.alphabetSize][this.blocks];
+        for (int word = 0; word < words; word++) {
+            for (int position = 0; position < size; position++) {
+                int letter = this.wordLetters[word * size + position];
+                this.wordsWithLetter[position * this.alphabetSize + letter][word / Long.SIZE] |= 1L << word;
+            }
+        }
+    }
+
+    /**
+     * Find a crossword of the given size.
+     *
+     * @return The grid, or null if there is none or the thread was interrupted.
+     */
+    public String solve(boolean debug) {
+        return solve(debug, new Deadline());
+    }
+
+    /**
+     * Find a crossword, giving up once the deadline expires.
+     *
+     * @return The grid, or null if there is none or the deadline expired.
+     */
+    String solve(boolean debug, Deadline deadline) {
+        int slots = 2 * this.size;
+        int cells = this.size * this.size;
+        this.domains = new long[slots][this.blocks];
+        this.domainFrom = new int[slots];
+        this.domainTo = new int[slots];
+        this.slotLetters = new int[slots][this.size];
+        this.grid = new char[cells];
+        this.trailDomains = new long[2 * cells][this.blocks];
+        this.trailRanges = new int[2 * cells][2];
+        this.trailLetters = new int[2 * cells][this.size];
+        this.deadends = 0;
+        this.start = System.currentTimeMillis();
+
+        int words = this.dictionary.getWordCount();
+        for (int slot = 0; slot < slots; slot++) {
+            for (int word = 0; word < words; word++) {
+                this.domains[slot][word / Long.SIZE] |= 1L << word;
+            }
+            this.domainFrom[slot] = 0;
+            this.domainTo[slot] = this.blocks;
+            updateSlotLetters(slot);
+        }
+        if (words == 0 || !solve(0, debug, deadline)) {
+            return null;
+        }
+        return new String(this.grid);
+    }
+
+    private boolean solve(int depth, boolean debug, Deadline deadline) {
+        int cell = getMostConstrainedCell();
+        if (cell < 0) {
+            return true;
+        } else if (deadline.isExpired()) {
+            return false;
+        }
+        int row = cell / this.size;
+        int column = cell % this.size;
+        for (int mask = getCandidates(row, column); mask != 0; mask &= mask - 1) {
+            int letter = Integer.numberOfTrailingZeros(mask);
+            save(depth, row, column);
+            this.grid[cell] = this.dictionary.getLetter(letter);
+            if (restrict(row, column, letter, depth) && solve(depth + 1, debug, deadline)) {
+                return true;
+            }
+            this.grid[cell] = 0;
+            restore(depth, row, column);
+        }
+        if (debug && ++this.deadends % REPORT_INTERVAL == 0) {
+            long now = System.currentTimeMillis();
+            System.err.println("Total deadends " + this.deadends + ". " + (double) this.deadends / ((now - this.start) / 1000.0) + " deadends per second.");
+        }
+        return false;
+    }
+
+    /**
+     * Empty cell with the fewest candidate letters, or -1 if the grid is full.
+     */
+    private int getMostConstrainedCell() {
+        int best = -1;
+        int bestCount = Integer.MAX_VALUE;
+        for (int cell = 0; cell < this.grid.length; cell++) {
+            if (this.grid[cell] == 0) {
+                int count = Integer.bitCount(getCandidates(cell / this.size, cell % this.size));
+                if (count < bestCount) {
+                    best = cell;
+                    bestCount = count;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int getCandidates(int row, int column) {
+        return this.slotLetters[row][column] & this.slotLetters[this.size + column][row];
+    }
+
+    /**
+     * Narrow the row and the column of the placed letter, and check that every empty cell in them still has a
+     * candidate.
+     */
+    private boolean restrict(int row, int column, int letter, int depth) {
+        if (!restrict(row, column, letter) || !restrict(this.size + column, row, letter)) {
+            return false;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if ((this.grid[row * this.size + i] == 0 && getCandidates(row, i) == 0)
+                    || (this.grid[i * this.size + column] == 0 && getCandidates(i, column) == 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keep only the words of the slot with the letter at the position.
+     */
+    private boolean restrict(int slot, int position, int letter) {
+        long[] domain = this.domains[slot];
+        long[] allowed = this.wordsWithLetter[position * this.alphabetSize + letter];
+        int from = this.domainFrom[slot];
+        int to = this.domainTo[slot];
+        for (int block = from; block < to; block++) {
+            domain[block] &= allowed[block];
+        }
+        while (from < to && domain[from] == 0) {
+            from++;
+        }
+        while (to > from && domain[to - 1] == 0) {
+            to--;
+        }
+        this.domainFrom[slot] = from;
+        this.domainTo[slot] = to;
+        if (from == to) {
+            return false;
+        }
+        updateSlotLetters(slot);
+        return true;
+    }
+
+    /**
+     * Recompute the letters the remaining words of the slot have at each position.
+     */
+    private void updateSlotLetters(int slot) {
+        int[] letters = this.slotLetters[slot];
+        for (int position = 0; position < this.size; position++) {
+            letters[position] = 0;
+        }
+        long[] domain = this.domains[slot];
+        for (int block = this.domainFrom[slot]; block < this.domainTo[slot]; block++) {
+            for (long bits = domain[block]; bits != 0; bits &= bits - 1) {
+                int word = block * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                for (int position = 0; position < this.size; position++) {
+                    letters[position] |= 1 << this.wordLetters[word * this.size + position];
+                }
+            }
+        }
+    }
+
+    private void save(int depth, int row, int column) {
+        save(2 * depth, row);
+        save(2 * depth + 1, this.size + column);
+    }
+
+    private void save(int trail, int slot) {
+        int from = this.domainFrom[slot];
+        int to = this.domainTo[slot];
+        System.arraycopy(this.domains[slot], from, this.trailDomains[trail], from, to - from);
+        this.trailRanges[trail][0] = from;
+        this.trailRanges[trail][1] = to;
+        System.arraycopy(this.slotLetters[slot], 0, this.trailLetters[trail], 0, this.size);
+    }
+
+    private void restore(int depth, int row, int column) {
+        restore(2 * depth, row);
+        restore(2 * depth + 1, this.size + column);
+    }
+
+    private void restore(int trail, int slot) {
+        int from = this.trailRanges[trail][0];
+        int to = this.trailRanges[trail][1];
+        System.arraycopy(this.trailDomains[trail], from, this.domains[slot], from, to - from);
+        this.domainFrom[slot] = from;
+        this.domainTo[slot] = to;
+        System.arraycopy(this.trailLetters[trail], 0, this.slotLetters[slot], 0, this.size);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = Integer.parseInt(args[1]);
+        ForwardCheckingCrossword cw = new ForwardCheckingCrossword(size, new File(args[0]));
+        String grid = cw.solve(true);
+        if (grid != null) {
+            for (int i = 0; i < grid.length(); i++) {
+                if (i % size == 0) {
+                    System.out.print("\n");
+                }
+                System.out.print(grid.charAt(i));
+            }
+            System.out.print("\n");
+        } else {
+            System.err.println("No solution found.");
+        }
+    }
+}
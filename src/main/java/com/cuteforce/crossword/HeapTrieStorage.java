@@ -0,0 +1,96 @@
+package com.cuteforce.crossword;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Trie arrays built in this process from a word list.
+ */
+final class HeapTrieStorage implements TrieStorage {
+
+    private final int[] daughterMask;
+    private final int[] firstDaughter;
+    private final int[] frequency;
+    private final int[] positionOffset;
+    private final int[] positionMasks;
+    private final float[] sortedProbability;
+    private final byte[] sortedLetter;
+
+    HeapTrieStorage(int[] daughterMask, int[] firstDaughter, int[] frequency, int[] positionOffset, int[] positionMasks,
+            float[] sortedProbability, byte[] sortedLetter) {
+        this.daughterMask = daughterMask;
+        this.firstDaughter = firstDaughter;
+        this.frequency = frequency;
+        this.positionOffset = positionOffset;
+        this.positionMasks = positionMasks;
+        this.sortedProbability = sortedProbability;
+        this.sortedLetter = sortedLetter;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return this.daughterMask.length;
+    }
+
+    @Override
+    public int getPositionMaskCount() {
+        return this.positionMasks.length;
+    }
+
+    @Override
+    public int getDaughterMask(int node) {
+        return this.daughterMask[node];
+    }
+
+    @Override
+    public int getFirstDaughter(int node) {
+        return this.firstDaughter[node];
+    }
+
+    @Override
+    public int getFrequency(int node) {
+        return this.frequency[node];
+    }
+
+    @Override
+    public int getPositionMask(int node, int position) {
+        return this.positionMasks[this.positionOffset[node] + position];
+    }
+
+    /**
+     * Branch-free over contiguous arrays: m | -m has its sign bit set exactly when m is not zero, so the AND of
+     * those values is negative only if no intersection is empty. The loop has no early exit, which keeps it
+     * short and predictable for rows of crossword size and lets the JIT unroll it.
+     */
+    @Override
+    public boolean intersectsPositionMasks(int node, int[] masks, int first) {
+        int offset = this.positionOffset[node];
+        int all = -1;
+        for (int position = first; position < masks.length; position++) {
+            int common = this.positionMasks[offset + position] & masks[position];
+            all &= common | -common;
+        }
+        return all < 0;
+    }
+
+    @Override
+    public float getSortedProbability(int daughter) {
+        return this.sortedProbability[daughter];
+    }
+
+    @Override
+    public int getSortedLetter(int daughter) {
+        return this.sortedLetter[daughter];
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        int nodes = this.daughterMask.length;
+        TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer().put(this.daughterMask);
+        TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer().put(this.firstDaughter);
+        TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer().put(this.frequency);
+        TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer().put(this.positionOffset);
+        TrieStorage.slice(buffer, this.positionMasks.length * Integer.BYTES).asIntBuffer().put(this.positionMasks);
+        TrieStorage.slice(buffer, nodes * Float.BYTES).asFloatBuffer().put(this.sortedProbability);
+        TrieStorage.slice(buffer, nodes).put(this.sortedLetter);
+    }
+}
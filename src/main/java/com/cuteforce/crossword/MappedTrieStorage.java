@@ -0,0 +1,95 @@
+package com.cuteforce.crossword;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Trie arrays read in place from a memory-mapped compiled dictionary.
+ */
+final class MappedTrieStorage implements TrieStorage {
+
+    private final IntBuffer daughterMask;
+    private final IntBuffer firstDaughter;
+    private final IntBuffer frequency;
+    private final IntBuffer positionOffset;
+    private final IntBuffer positionMasks;
+    private final FloatBuffer sortedProbability;
+    private final ByteBuffer sortedLetter;
+
+    /**
+     * Arrays starting at the position of the buffer, which is moved past them.
+     */
+    MappedTrieStorage(ByteBuffer buffer, int nodes, int positionMasks) {
+        this.daughterMask = TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer();
+        this.firstDaughter = TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer();
+        this.frequency = TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer();
+        this.positionOffset = TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer();
+        this.positionMasks = TrieStorage.slice(buffer, positionMasks * Integer.BYTES).asIntBuffer();
+        this.sortedProbability = TrieStorage.slice(buffer, nodes * Float.BYTES).asFloatBuffer();
+        this.sortedLetter = TrieStorage.slice(buffer, nodes);
+    }
+
+    @Override
+    public int getNodeCount() {
+        return this.daughterMask.limit();
+    }
+
+    @Override
+    public int getPositionMaskCount() {
+        return this.positionMasks.limit();
+    }
+
+    @Override
+    public int getDaughterMask(int node) {
+        return this.daughterMask.get(node);
+    }
+
+    @Override
+    public int getFirstDaughter(int node) {
+        return this.firstDaughter.get(node);
+    }
+
+    @Override
+    public int getFrequency(int node) {
+        return this.frequency.get(node);
+    }
+
+    @Override
+    public int getPositionMask(int node, int position) {
+        return this.positionMasks.get(this.positionOffset.get(node) + position);
+    }
+
+    @Override
+    public boolean intersectsPositionMasks(int node, int[] masks, int first) {
+        int offset = this.positionOffset.get(node);
+        int all = -1;
+        for (int position = first; position < masks.length; position++) {
+            int common = this.positionMasks.get(offset + position) & masks[position];
+            all &= common | -common;
+        }
+        return all < 0;
+    }
+
+    @Override
+    public float getSortedProbability(int daughter) {
+        return this.sortedProbability.get(daughter);
+    }
+
+    @Override
+    public int getSortedLetter(int daughter) {
+        return this.sortedLetter.get(daughter);
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) {
+        int nodes = getNodeCount();
+        TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer().put(this.daughterMask.duplicate());
+        TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer().put(this.firstDaughter.duplicate());
+        TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer().put(this.frequency.duplicate());
+        TrieStorage.slice(buffer, nodes * Integer.BYTES).asIntBuffer().put(this.positionOffset.duplicate());
+        TrieStorage.slice(buffer, getPositionMaskCount() * Integer.BYTES).asIntBuffer().put(this.positionMasks.duplicate());
+        TrieStorage.slice(buffer, nodes * Float.BYTES).asFloatBuffer().put(this.sortedProbability.duplicate());
+        TrieStorage.slice(buffer, nodes).put(this.sortedLetter.duplicate());
+    }
+}
@@ -0,0 +1,160 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Preconditions;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded set of search states that are known to have no solution below them.
+ *
+ * A state is keyed on what decides the rest of the search: the depth, the trie node of the current row and
+ * the trie nodes of all columns. Different paths that lead to the same nodes therefore share one entry, and
+ * keys are compared in full, so a lookup never skips a state that was not proven dead.
+ *
+ * The cache is set-associative with {@link #WAYS} entries per bucket and can be shared between threads.
+ * When a bucket is full, an entry is evicted with the clock policy: entries that were hit since the last
+ * eviction get a second chance, and among the rest the deepest one is evicted, since it prunes the smallest
+ * subtree.
+ */
+public class NogoodCache {
+
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+
+    private static final int WAYS = 4;
+
+    private static final class Entry {
+        final int[] key;
+        final int hash;
+        volatile boolean referenced;
+
+        Entry(int[] key, int hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int bucketMask;
+
+    public NogoodCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximum number of states kept. Rounded up to a power of two.
+     */
+    public NogoodCache(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive.");
+        int buckets = Math.max(1, Integer.highestOneBit((capacity + WAYS - 1) / WAYS - 1) << 1);
+        this.slots = new AtomicReferenceArray<>(buckets * WAYS);
+        this.bucketMask = buckets - 1;
+    }
+
+    public int getCapacity() {
+        return this.slots.length();
+    }
+
+    /**
+     * Whether the state is known to have no solution. The key is not kept.
+     */
+    boolean contains(int[] key) {
+        int hash = hash(key);
+        int first = (hash & this.bucketMask) * WAYS;
+        for (int slot = first; slot < first + WAYS; slot++) {
+            Entry entry = this.slots.get(slot);
+            if (entry != null && entry.hash == hash && Arrays.equals(entry.key, key)) {
+                entry.referenced = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that the state has no solution. The key is copied.
+     */
+    void add(int[] key) {
+        int hash = hash(key);
+        int first = (hash & this.bucketMask) * WAYS;
+        int victim = -1;
+        int victimDepth = -1;
+        boolean victimReferenced = true;
+        for (int slot = first; slot < first + WAYS; slot++) {
+            Entry entry = this.slots.get(slot);
+            if (entry == null) {
+                if (this.slots.compareAndSet(slot, null, new Entry(key.clone(), hash))) {
+                    return;
+                }
+                entry = this.slots.get(slot);
+            }
+            if (entry.hash == hash && Arrays.equals(entry.key, key)) {
+                entry.referenced = true;
+                return;
+            }
+            boolean referenced = entry.referenced;
+            entry.referenced = false;
+            int depth = entry.key[0];
+            if ((victimReferenced && !referenced) || (victimReferenced == referenced && depth > victimDepth)) {
+                victim = slot;
+                victimDepth = depth;
+                victimReferenced = referenced;
+            }
+        }
+        this.slots.set(victim, new Entry(key.clone(), hash));
+    }
+
+    /**
+     * Remove all states, keeping the capacity. Must not run while other threads use the cache.
+     */
+    void clear() {
+        for (int slot = 0; slot < this.slots.length(); slot++) {
+            this.slots.set(slot, null);
+        }
+    }
+
+    /**
+     * Write the capacity and all keys. Entries only ever hold proven states, so the cache can be written while
+     * other threads use it.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(getCapacity());
+        for (int slot = 0; slot < this.slots.length(); slot++) {
+            Entry entry = this.slots.get(slot);
+            if (entry != null) {
+                out.writeInt(entry.key.length);
+                for (int value : entry.key) {
+                    out.writeInt(value);
+                }
+            }
+        }
+        out.writeInt(0);
+    }
+
+    /**
+     * Cache with the capacity and keys written by {@link #write(DataOutput)}.
+     */
+    static NogoodCache read(DataInput in) throws IOException {
+        NogoodCache cache = new NogoodCache(in.readInt());
+        for (int length = in.readInt(); length > 0; length = in.readInt()) {
+            int[] key = new int[length];
+            for (int i = 0; i < length; i++) {
+                key[i] = in.readInt();
+            }
+            cache.add(key);
+        }
+        return cache;
+    }
+
+    static int hash(int[] key) {
+        int hash = 0;
+        for (int value : key) {
+            hash = (hash ^ value) * 0x9E3779B1;
+            hash ^= hash >>> 15;
+        }
+        return hash;
+    }
+}
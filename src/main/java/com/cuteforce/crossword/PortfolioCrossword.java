@@ -0,0 +1,142 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs several crossword solvers on one dictionary at the same time and returns the result of the first one to
+ * finish. The others are stopped by cancelling their {@link Deadline}s, which also reaches the fork/join workers of
+ * {@link BruteForceCrossword}, unlike an interrupt. Each solver has a deadline of its own, as a solver may cancel
+ * its deadline to stop its own workers.
+ *
+ * Which solver is fastest depends on the size and the dictionary, so racing them bounds the time by the best of
+ * them. All solvers are complete, so the first result is final also when it is null: there is no grid.
+ * {@link Crossword} and the {@link RandomizedCrossword}s share one nogood cache, so states proven dead by one of
+ * them are skipped by the others.
+ */
+public class PortfolioCrossword {
+
+    private static final int DEFAULT_RANDOMIZED = 2;
+
+    private final Dictionary dictionary;
+    private final int randomized;
+
+    public PortfolioCrossword(int size, File dictionary) throws IOException {
+        this(DEFAULT_RANDOMIZED, Dictionary.open(size, dictionary));
+    }
+
+    /**
+     * @param randomized Number of {@link RandomizedCrossword}s to run, with seeds 1 to randomized.
+     */
+    public PortfolioCrossword(int randomized, Dictionary dictionary) {
+        this.dictionary = dictionary;
+        this.randomized = randomized;
+    }
+
+    /**
+     * Find a crossword with a thread per solver.
+     */
+    public String solve(boolean debug) {
+        List<Deadline> deadlines = Lists.newArrayList();
+        List<Callable<String>> solvers = getSolvers(debug, deadlines);
+        ExecutorService executor = Executors.newFixedThreadPool(solvers.size());
+        try {
+            return solve(executor, solvers, deadlines);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Find a crossword with the solvers running on the executor. Returns once one of them is done, after
+     * stopping the others.
+     *
+     * @return The grid, or null if there is none or the thread was interrupted.
+     */
+    public String solve(ExecutorService executor, boolean debug) {
+        return solve(executor, Lists.newArrayList(), debug);
+    }
+
+    /**
+     * Find a crossword with the solvers running on the executor until one of them is done.
+     *
+     * @param deadlines The deadlines of the solvers are added to it. All of them are cancelled on return.
+     */
+    String solve(ExecutorService executor, List<Deadline> deadlines, boolean debug) {
+        return solve(executor, getSolvers(debug, deadlines), deadlines);
+    }
+
+    private String solve(ExecutorService executor, List<Callable<String>> solvers, List<Deadline> deadlines) {
+        try {
+            return executor.invokeAny(solvers);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            for (Deadline deadline : deadlines) {
+                deadline.cancel();
+            }
+        }
+    }
+
+    private List<Callable<String>> getSolvers(boolean debug, List<Deadline> deadlines) {
+        NogoodCache nogoods = new NogoodCache();
+        List<Callable<String>> solvers = Lists.newArrayList();
+        Deadline crossword = add(deadlines);
+        solvers.add(() -> report("Crossword", new Crossword(nogoods, this.dictionary).solve(false, crossword), crossword, debug));
+        Deadline bruteForce = add(deadlines);
+        solvers.add(() -> report("BruteForceCrossword", new BruteForceCrossword(this.dictionary).solve(false, bruteForce), bruteForce, debug));
+        Deadline forwardChecking = add(deadlines);
+        solvers.add(() -> report("ForwardCheckingCrossword", new ForwardCheckingCrossword(this.dictionary).solve(false, forwardChecking), forwardChecking, debug));
+        for (int seed = 1; seed <= this.randomized; seed++) {
+            long solverSeed = seed;
+            Deadline randomized = add(deadlines);
+            solvers.add(() -> report("RandomizedCrossword " + solverSeed, new RandomizedCrossword(nogoods, solverSeed, this.dictionary).solve(false, randomized), randomized, debug));
+        }
+        return solvers;
+    }
+
+    private static Deadline add(List<Deadline> deadlines) {
+        Deadline deadline = new Deadline();
+        deadlines.add(deadline);
+        return deadline;
+    }
+
+    /**
+     * Report a solver that finished by itself, not one that was stopped.
+     */
+    private static String report(String solver, String grid, Deadline deadline, boolean debug) {
+        if (debug && (grid != null || !deadline.isExpired())) {
+            System.err.println(solver + " finished.");
+        }
+        return grid;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = Integer.parseInt(args[1]);
+        int randomized = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RANDOMIZED;
+        PortfolioCrossword cw = new PortfolioCrossword(randomized, Dictionary.open(size, new File(args[0])));
+        String grid = cw.solve(true);
+        if (grid != null) {
+            for (int i = 0; i < grid.length(); i++) {
+                if (i % size == 0) {
+                    System.out.print("\n");
+                }
+                System.out.print(grid.charAt(i));
+            }
+            System.out.print("\n");
+        } else {
+            System.err.println("No solution found.");
+        }
+    }
+}
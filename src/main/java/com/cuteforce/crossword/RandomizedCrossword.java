@@ -0,0 +1,137 @@
+package com.cuteforce.crossword;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Crossword solver that tries letters in a random order and restarts with a new order after a number of
+ * backtracks. The limit grows geometrically with each restart, so a restart eventually searches the whole tree
+ * and the solver is complete.
+ *
+ * Restarts escape the unlucky early choices a fixed letter order can get stuck below. Subtrees that were
+ * searched completely are added to the nogood cache and skipped by later restarts, so little work is repeated.
+ */
+public class RandomizedCrossword {
+
+    private static final long INITIAL_BACKTRACKS = 1000;
+    private static final double BACKTRACK_GROWTH = 1.5;
+    private static final int BACKTRACKS_BETWEEN_CHECKS = 1 << 12;
+
+    private final Dictionary dictionary;
+    private final NogoodCache nogoods;
+    private final long seed;
+
+    public RandomizedCrossword(int size, long seed, File dictionary) throws IOException {
+        this(new NogoodCache(), seed, Dictionary.open(size, dictionary));
+    }
+
+    /**
+     * @param nogoods Cache of states known to have no solution. May be shared with other solvers using the same
+     *                dictionary.
+     */
+    public RandomizedCrossword(NogoodCache nogoods, long seed, Dictionary dictionary) {
+        this.dictionary = dictionary;
+        this.nogoods = nogoods;
+        this.seed = seed;
+    }
+
+    /**
+     * Find a crossword of the given size.
+     *
+     * @return The grid, or null if there is none or the thread was interrupted.
+     */
+    public String solve(boolean debug) {
+        return solve(debug, new Deadline());
+    }
+
+    /**
+     * Find a crossword, giving up once the deadline expires.
+     *
+     * @return The grid, or null if there is none or the deadline expired.
+     */
+    String solve(boolean debug, Deadline deadline) {
+        Random random = new Random(this.seed);
+        long limit = INITIAL_BACKTRACKS;
+        for (int restart = 0; !deadline.isExpired(); restart++) {
+            SearchState state = new SearchState(this.dictionary);
+            int status = search(state, random, limit, deadline);
+            if (status == SearchState.FOUND) {
+                return state.getLetters();
+            } else if (status == SearchState.EXHAUSTED) {
+                return null;
+            }
+            if (debug) {
+                System.err.println("Restart " + (restart + 1) + " after " + limit + " backtracks.");
+            }
+            limit = (long) (limit * BACKTRACK_GROWTH);
+        }
+        return null;
+    }
+
+    /**
+     * Search from the empty grid, trying the letters in a random order, until a grid is found, the tree is
+     * exhausted, or {@link SearchState#PAUSED} is returned when the backtrack limit is reached or the deadline
+     * expires.
+     */
+    private int search(SearchState state, Random random, long limit, Deadline deadline) {
+        int cells = this.dictionary.getSize() * this.dictionary.getSize();
+        int[] pending = new int[cells + 1];
+        pending[0] = state.candidates();
+        long backtracks = 0;
+        while (!state.isComplete()) {
+            int depth = state.getDepth();
+            int mask = pending[depth];
+            if (mask == 0) {
+                this.nogoods.add(state.getNogoodKey());
+                if (depth == 0) {
+                    return SearchState.EXHAUSTED;
+                } else if (++backtracks == limit
+                        || (backtracks % BACKTRACKS_BETWEEN_CHECKS == 0 && deadline.isExpired())) {
+                    return SearchState.PAUSED;
+                }
+                state.pop();
+                continue;
+            }
+            int letter = selectBit(mask, random.nextInt(Integer.bitCount(mask)));
+            pending[depth] = mask & ~(1 << letter);
+            state.push(letter);
+            if (state.isComplete()) {
+                break;
+            } else if (!state.isViable() || this.nogoods.contains(state.getNogoodKey())) {
+                state.pop();
+            } else {
+                pending[depth + 1] = state.candidates();
+            }
+        }
+        return SearchState.FOUND;
+    }
+
+    /**
+     * Index of the n-th lowest set bit of the mask.
+     */
+    private static int selectBit(int mask, int n) {
+        for (int i = 0; i < n; i++) {
+            mask &= mask - 1;
+        }
+        return Integer.numberOfTrailingZeros(mask);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        RandomizedCrossword cw = new RandomizedCrossword(size, seed, new File(args[0]));
+        String grid = cw.solve(true);
+        if (grid != null) {
+            for (int i = 0; i < grid.length(); i++) {
+                if (i % size == 0) {
+                    System.out.print("\n");
+                }
+                System.out.print(grid.charAt(i));
+            }
+            System.out.print("\n");
+        } else {
+            System.err.println("No solution found.");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.cuteforce.crossword;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of a search, read while it runs.
+ *
+ * The counters are {@link LongAdder}s, so workers adding to them do not contend on one cache line. Search states
+ * count in plain fields and add their counts here in batches, see {@link SearchState#reportTo(SearchMetrics)},
+ * so the counters lag the search by at most one batch per worker. Read them with the getters, with
+ * {@link #snapshot()}, or over JMX after {@link #register(String)}.
+ *
+ * Rates are over the time in which at least one search was running, so time between searches and before the
+ * first one does not lower them.
+ */
+public class SearchMetrics implements SearchMetricsMXBean {
+
+    /**
+     * Counters of a search at one point in time.
+     */
+    public static final class Snapshot {
+        public final long visited;
+        public final long deadends;
+        public final long nogoodHits;
+        public final long[] deadendsByDepth;
+        /** Time in which at least one search was running. */
+        public final long elapsedMillis;
+
+        Snapshot(long visited, long deadends, long nogoodHits, long[] deadendsByDepth, long elapsedMillis) {
+            this.visited = visited;
+            this.deadends = deadends;
+            this.nogoodHits = nogoodHits;
+            this.deadendsByDepth = deadendsByDepth;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public double getNodesPerSecond() {
+            return this.elapsedMillis == 0 ? 0.0 : this.visited * 1000.0 / this.elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Visited " + this.visited + " nodes, " + this.deadends + " deadends, " + this.nogoodHits
+                    + " nogood hits. " + getNodesPerSecond() + " nodes per second.";
+        }
+    }
+
+    private final LongAdder visited = new LongAdder();
+    private final LongAdder deadends = new LongAdder();
+    private final LongAdder nogoodHits = new LongAdder();
+    private final LongAdder[] deadendsByDepth;
+    private int running;
+    private long runningSince;
+    private long searchMillis;
+
+    /**
+     * Metrics of searches over grids with the given number of cells.
+     */
+    public SearchMetrics(int cells) {
+        this.deadendsByDepth = new LongAdder[cells + 1];
+        for (int depth = 0; depth <= cells; depth++) {
+            this.deadendsByDepth[depth] = new LongAdder();
+        }
+    }
+
+    /**
+     * Called by a solver when a search starts. Every call must be followed by {@link #searchFinished()}.
+     */
+    synchronized void searchStarted() {
+        if (this.running++ == 0) {
+            this.runningSince = System.currentTimeMillis();
+        }
+    }
+
+    synchronized void searchFinished() {
+        if (--this.running == 0) {
+            this.searchMillis += System.currentTimeMillis() - this.runningSince;
+        }
+    }
+
+    /**
+     * Time in which at least one search was running.
+     */
+    synchronized long getSearchMillis() {
+        return this.running == 0 ? this.searchMillis : this.searchMillis + System.currentTimeMillis() - this.runningSince;
+    }
+
+    /**
+     * Add counts, and clear the per-depth dead end counts.
+     */
+    void add(long visited, long deadends, long nogoodHits, long[] deadendsByDepth) {
+        this.visited.add(visited);
+        this.deadends.add(deadends);
+        this.nogoodHits.add(nogoodHits);
+        for (int depth = 0; depth < deadendsByDepth.length; depth++) {
+            if (deadendsByDepth[depth] != 0) {
+                this.deadendsByDepth[depth].add(deadendsByDepth[depth]);
+                deadendsByDepth[depth] = 0;
+            }
+        }
+    }
+
+    @Override
+    public long getVisited() {
+        return this.visited.sum();
+    }
+
+    @Override
+    public long getDeadends() {
+        return this.deadends.sum();
+    }
+
+    @Override
+    public long getNogoodHits() {
+        return this.nogoodHits.sum();
+    }
+
+    /**
+     * Dead ends at each depth, where depth is the number of cells filled.
+     */
+    @Override
+    public long[] getDeadendsByDepth() {
+        long[] counts = new long[this.deadendsByDepth.length];
+        for (int depth = 0; depth < counts.length; depth++) {
+            counts[depth] = this.deadendsByDepth[depth].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Nodes visited per second of searching.
+     */
+    @Override
+    public double getNodesPerSecond() {
+        return snapshot().getNodesPerSecond();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(getVisited(), getDeadends(), getNogoodHits(), getDeadendsByDepth(), getSearchMillis());
+    }
+
+    /**
+     * Register with the platform MBean server as com.cuteforce.crossword:type=SearchMetrics,name=name.
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("com.cuteforce.crossword:type=SearchMetrics,name=" + ObjectName.quote(name)));
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
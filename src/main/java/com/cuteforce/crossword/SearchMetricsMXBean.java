@@ -0,0 +1,17 @@
+package com.cuteforce.crossword;
+
+/**
+ * Management interface of {@link SearchMetrics}.
+ */
+public interface SearchMetricsMXBean {
+
+    long getVisited();
+
+    long getDeadends();
+
+    long getNogoodHits();
+
+    long[] getDeadendsByDepth();
+
+    double getNodesPerSecond();
+}
@@ -0,0 +1,299 @@
+package com.cuteforce.crossword;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mutable, allocation-free state of a row-major depth-first search over a square grid.
+ *
+ * Keeps one trie cursor per row and per column. Placing a letter advances the cursor of its row and its
+ * column, and the previous cursors are kept in a trail so that backtracking restores them in O(1). The
+ * letters still to be tried at each depth are kept as masks, which lets the search be run iteratively and
+ * paused after a given number of nodes, and lets untried letters be split off into a new state for another thread.
+ */
+final class SearchState {
+
+    static final int FOUND = 0;
+    static final int EXHAUSTED = 1;
+    static final int PAUSED = 2;
+
+    /**
+     * Part of the search: the grids that start with the prefix of letter indexes and continue with one of the
+     * letters in the mask.
+     */
+    static final class Subtree {
+        final int[] prefix;
+        final int letters;
+
+        Subtree(int[] prefix, int letters) {
+            this.prefix = prefix;
+            this.letters = letters;
+        }
+    }
+
+    private final Dictionary dictionary;
+    private final NogoodCache nogoods;
+    private final int size;
+    private final int cells;
+    private final char[] grid;
+    private final int[] rows;
+    private final int[] columns;
+    /** Daughter mask of the node of each column, gathered for {@link #isViable()}. */
+    private final int[] columnMasks;
+    private final int[] path;
+    private final int[] rowTrail;
+    private final int[] columnTrail;
+    private final int[] columnMaskTrail;
+    private final int[] pending;
+    private final int[] nogoodKey;
+    private final int base;
+    private int depth;
+    /** Deepest node on the current path whose subtree is not searched completely by this state. */
+    private int incomplete;
+    private long visited;
+    private long deadends;
+    private long nogoodHits;
+    private final long[] deadendsByDepth;
+
+    SearchState(Dictionary dictionary) {
+        this(dictionary, null);
+    }
+
+    /**
+     * Search state for the empty grid.
+     *
+     * @param nogoods States without solutions are looked up in and added to this cache. May be null.
+     */
+    SearchState(Dictionary dictionary, NogoodCache nogoods) {
+        this(dictionary, nogoods, new int[0], -1);
+    }
+
+    /**
+     * Search state for the grids starting with the prefix of letter indexes, where only the letters in
+     * nextLetters are tried in the cell after the prefix.
+     */
+    SearchState(Dictionary dictionary, NogoodCache nogoods, int[] prefix, int nextLetters) {
+        this.dictionary = dictionary;
+        this.nogoods = nogoods;
+        this.size = dictionary.getSize();
+        this.cells = this.size * this.size;
+        this.grid = new char[this.cells];
+        this.rows = new int[this.size];
+        this.columns = new int[this.size];
+        this.columnMasks = new int[this.size];
+        Arrays.fill(this.columnMasks, dictionary.getDaughterMask(Dictionary.ROOT));
+        this.path = new int[this.cells];
+        this.rowTrail = new int[this.cells];
+        this.columnTrail = new int[this.cells];
+        this.columnMaskTrail = new int[this.cells];
+        this.pending = new int[this.cells + 1];
+        this.nogoodKey = new int[this.size + 2];
+        this.deadendsByDepth = new long[this.cells + 1];
+        this.base = prefix.length;
+        this.depth = 0;
+        for (int letter : prefix) {
+            push(letter);
+        }
+        this.incomplete = this.base;
+        this.pending[this.base] = candidates() & nextLetters;
+    }
+
+    int getDepth() {
+        return this.depth;
+    }
+
+    boolean isComplete() {
+        return this.depth == this.cells;
+    }
+
+    /**
+     * Add the nodes, dead ends and nogood hits counted since the last report to the metrics.
+     */
+    void reportTo(SearchMetrics metrics) {
+        metrics.add(this.visited, this.deadends, this.nogoodHits, this.deadendsByDepth);
+        this.visited = 0;
+        this.deadends = 0;
+        this.nogoodHits = 0;
+    }
+
+    /**
+     * Count a dead end at the current depth, for a search that does not run through {@link #advance(long)}.
+     */
+    void countDeadend() {
+        this.deadends++;
+        this.deadendsByDepth[this.depth]++;
+    }
+
+    /**
+     * Count a visited node, for a search that does not run through {@link #advance(long)}.
+     */
+    void countVisited() {
+        this.visited++;
+    }
+
+    /**
+     * Whether the nogood cache holds the current state.
+     */
+    boolean isNogood() {
+        if (this.nogoods != null && this.nogoods.contains(getNogoodKey())) {
+            this.nogoodHits++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Letters placed so far, in row-major order.
+     */
+    String getLetters() {
+        return new String(this.grid, 0, this.depth);
+    }
+
+    /**
+     * Trie node of the row of the next cell.
+     */
+    int getRowNode() {
+        return this.rows[this.depth / this.size];
+    }
+
+    /**
+     * Trie node of the column of the next cell.
+     */
+    int getColumnNode() {
+        return this.columns[this.depth % this.size];
+    }
+
+    /**
+     * Key identifying the rest of the search from this state: the depth, the node of the current row and the
+     * nodes of all columns. The returned array is reused by the next call.
+     */
+    int[] getNogoodKey() {
+        this.nogoodKey[0] = this.depth;
+        this.nogoodKey[1] = getRowNode();
+        System.arraycopy(this.columns, 0, this.nogoodKey, 2, this.size);
+        return this.nogoodKey;
+    }
+
+    /**
+     * Mask of the letters that continue both the current row and the current column.
+     */
+    int candidates() {
+        return this.dictionary.getDaughterMask(this.rows[this.depth / this.size]) & this.columnMasks[this.depth % this.size];
+    }
+
+    /**
+     * Whether every remaining cell of the current row can still get a letter that continues both the row and
+     * the column of the cell. Looks at the letters the row can have further ahead, so a dead row is found before
+     * the search reaches the cell that kills it.
+     */
+    boolean isViable() {
+        return this.dictionary.intersectsPositionMasks(this.rows[this.depth / this.size], this.columnMasks, this.depth % this.size);
+    }
+
+    /**
+     * Place a letter from {@link #candidates()} in the next cell.
+     */
+    void push(int letter) {
+        int row = this.depth / this.size;
+        int column = this.depth % this.size;
+        this.rowTrail[this.depth] = this.rows[row];
+        this.columnTrail[this.depth] = this.columns[column];
+        this.columnMaskTrail[this.depth] = this.columnMasks[column];
+        this.rows[row] = this.dictionary.getDaughter(this.rows[row], letter);
+        this.columns[column] = this.dictionary.getDaughter(this.columns[column], letter);
+        this.columnMasks[column] = this.dictionary.getDaughterMask(this.columns[column]);
+        this.path[this.depth] = letter;
+        this.grid[this.depth++] = this.dictionary.getLetter(letter);
+    }
+
+    /**
+     * Remove the last placed letter.
+     */
+    void pop() {
+        this.depth--;
+        this.rows[this.depth / this.size] = this.rowTrail[this.depth];
+        int column = this.depth % this.size;
+        this.columns[column] = this.columnTrail[this.depth];
+        this.columnMasks[column] = this.columnMaskTrail[this.depth];
+    }
+
+    /**
+     * Continue the search for at most budget nodes.
+     *
+     * @return {@link #FOUND} if the grid is complete, {@link #EXHAUSTED} if there are no more grids to try or
+     *         {@link #PAUSED} if the budget ran out. The search continues after the last found grid when called again.
+     */
+    int advance(long budget) {
+        if (this.depth == this.cells) {
+            pop();
+            this.incomplete = this.depth;
+        }
+        for (long i = 0; i < budget; i++) {
+            int mask = this.pending[this.depth];
+            if (mask == 0) {
+                countDeadend();
+                if (this.depth > this.incomplete) {
+                    if (this.nogoods != null) {
+                        this.nogoods.add(getNogoodKey());
+                    }
+                } else {
+                    this.incomplete = this.depth - 1;
+                }
+                if (this.depth == this.base) {
+                    return EXHAUSTED;
+                }
+                pop();
+                continue;
+            }
+            this.pending[this.depth] = mask & (mask - 1);
+            push(Integer.numberOfTrailingZeros(mask));
+            this.visited++;
+            if (this.depth == this.cells) {
+                this.incomplete = this.depth;
+                return FOUND;
+            }
+            if (!isViable() || isNogood()) {
+                this.pending[this.depth] = 0;
+            } else {
+                this.pending[this.depth] = candidates();
+            }
+        }
+        return PAUSED;
+    }
+
+    /**
+     * Add the subtrees this state has not searched yet to the frontier, deepest first, which is the order this
+     * state would search them in. A new state for each of them, as
+     * {@link #SearchState(Dictionary, NogoodCache, int[], int)} builds it, searches the same grids as this state.
+     */
+    void addFrontier(List<Subtree> frontier) {
+        for (int d = Math.min(this.depth, this.cells - 1); d >= this.base; d--) {
+            if (this.pending[d] != 0) {
+                frontier.add(new Subtree(Arrays.copyOf(this.path, d), this.pending[d]));
+            }
+        }
+    }
+
+    /**
+     * Hand off untried letters at the shallowest depth below maxDepth to a new search state. Takes half of the
+     * letters if there are several, so that both states keep work. Must not be called while a grid is complete.
+     *
+     * @return The new search state, or null if there is nothing to split off above maxDepth.
+     */
+    SearchState split(int maxDepth) {
+        for (int d = this.base; d < Math.min(maxDepth, this.depth + 1); d++) {
+            int mask = this.pending[d];
+            int letters = Integer.bitCount(mask);
+            if (letters > 1 || (letters == 1 && d < this.depth)) {
+                int handoff = mask;
+                for (int i = 0; i < letters / 2; i++) {
+                    handoff &= handoff - 1;
+                }
+                this.pending[d] = mask & ~handoff;
+                this.incomplete = Math.max(this.incomplete, d);
+                return new SearchState(this.dictionary, this.nogoods, Arrays.copyOf(this.path, d), handoff);
+            }
+        }
+        return null;
+    }
+}
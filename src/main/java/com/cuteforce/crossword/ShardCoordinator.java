@@ -0,0 +1,221 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Splits a crossword search into prefix shards and searches them in a pool of local {@link ShardWorker}
+ * processes, each with its own heap and fork/join pool.
+ *
+ * A shard holds the grids starting with one prefix of shardDepth - 1 cells, by default all but the last letter
+ * of the first row. Workers are handed one shard at a time, so faster workers take more of them. Once a worker
+ * finds a grid, the other workers are killed. A shard whose worker dies is handed to another worker, so workers
+ * wait for more shards until every shard is searched, even when the queue is empty.
+ */
+public class ShardCoordinator {
+
+    private static final long REPORT_INTERVAL = 100000000;
+    private static final long POLL_INTERVAL = 100;
+
+    private final int size;
+    private final File dictionaryName;
+    private final Dictionary dictionary;
+    private final int workers;
+    private final int shardDepth;
+    private final String workerClass;
+    private final AtomicLong deadends = new AtomicLong();
+    private final AtomicReference<String> solution = new AtomicReference<>();
+    private final List<Process> processes = Lists.newArrayList();
+
+    public ShardCoordinator(int size, File dictionary, int workers) throws IOException {
+        this(size, dictionary, workers, size);
+    }
+
+    /**
+     * @param dictionary Word list or compiled dictionaries, opened by the coordinator and by every worker.
+     * @param shardDepth Number of cells fixed by a shard. Must be between 1 and size * size.
+     */
+    public ShardCoordinator(int size, File dictionary, int workers, int shardDepth) throws IOException {
+        this(size, dictionary, workers, shardDepth, ShardWorker.class);
+    }
+
+    /**
+     * @param worker Main class of the worker processes, which must speak the protocol of {@link ShardWorker}.
+     */
+    ShardCoordinator(int size, File dictionary, int workers, int shardDepth, Class<?> worker) throws IOException {
+        this.size = size;
+        this.dictionaryName = dictionary;
+        this.dictionary = Dictionary.open(size, dictionary);
+        this.workers = workers;
+        this.shardDepth = shardDepth;
+        this.workerClass = worker.getName();
+    }
+
+    public String solve(boolean debug) throws IOException {
+        long start = System.currentTimeMillis();
+        BlockingQueue<SearchState.Subtree> shards = new LinkedBlockingQueue<>(getShards());
+        AtomicInteger unfinished = new AtomicInteger(shards.size());
+        if (debug) {
+            System.err.println("Searching " + shards.size() + " shards in " + this.workers + " workers.");
+        }
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / this.workers);
+        List<Thread> drivers = Lists.newArrayList();
+        for (int i = 0; i < this.workers; i++) {
+            Process process = new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + parallelism,
+                    "-cp", System.getProperty("java.class.path"),
+                    this.workerClass, this.dictionaryName.getPath(), Integer.toString(this.size))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            synchronized (this.processes) {
+                this.processes.add(process);
+            }
+            Thread driver = new Thread(() -> drive(process, shards, unfinished, start, debug), "shard-worker-" + i);
+            driver.start();
+            drivers.add(driver);
+        }
+        try {
+            for (Thread driver : drivers) {
+                driver.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            killWorkers();
+        }
+        if (this.solution.get() == null && unfinished.get() > 0) {
+            throw new IOException("All workers failed with " + unfinished.get() + " shards left.");
+        }
+        if (debug) {
+            System.err.println("Finished computing in " + (System.currentTimeMillis() - start) / 1000 + " seconds with "
+                    + this.deadends.get() + " deadends.");
+        }
+        return this.solution.get();
+    }
+
+    public long getDeadends() {
+        return this.deadends.get();
+    }
+
+    /**
+     * Hand shards to one worker until all shards are searched or a grid is found. Waits for shards while the
+     * queue is empty, since the shard of a worker that dies is put back.
+     */
+    private void drive(Process process, BlockingQueue<SearchState.Subtree> shards, AtomicInteger unfinished, long start, boolean debug) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(process.getOutputStream(), Charsets.UTF_8));
+        SearchState.Subtree shard = null;
+        try {
+            while (this.solution.get() == null && unfinished.get() > 0) {
+                if ((shard = shards.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+                    continue;
+                }
+                StringBuilder request = new StringBuilder(ShardWorker.SHARD).append(' ').append(shard.letters);
+                for (int letter : shard.prefix) {
+                    request.append(' ').append(letter);
+                }
+                out.println(request);
+                out.flush();
+                String reply = in.readLine();
+                if (reply == null) {
+                    throw new IOException("Worker exited.");
+                }
+                String[] fields = reply.split(" ", 3);
+                long total = this.deadends.addAndGet(Long.parseLong(fields[1]));
+                if (debug && total / REPORT_INTERVAL > (total - Long.parseLong(fields[1])) / REPORT_INTERVAL) {
+                    long now = System.currentTimeMillis();
+                    System.err.println("Total deadends " + total + ". " + (double) total / ((now - start) / 1000.0) + " deadends per second.");
+                }
+                if (fields[0].equals(ShardWorker.FOUND) && this.solution.compareAndSet(null, fields[2])) {
+                    killWorkers();
+                }
+                unfinished.decrementAndGet();
+                shard = null;
+            }
+            out.println(ShardWorker.STOP);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            if (this.solution.get() == null) {
+                System.err.println("Worker failed: " + e);
+                if (shard != null) {
+                    shards.add(shard);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void killWorkers() {
+        synchronized (this.processes) {
+            for (Process process : this.processes) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * All prefixes of shardDepth - 1 cells that can start a grid, each with the letters that can follow it.
+     */
+    List<SearchState.Subtree> getShards() {
+        List<SearchState.Subtree> shards = Lists.newArrayList();
+        addShards(new SearchState(this.dictionary), new int[this.shardDepth - 1], shards);
+        return shards;
+    }
+
+    private void addShards(SearchState state, int[] prefix, List<SearchState.Subtree> shards) {
+        int candidates = state.candidates();
+        if (state.getDepth() == prefix.length) {
+            if (candidates != 0) {
+                shards.add(new SearchState.Subtree(prefix.clone(), candidates));
+            }
+            return;
+        }
+        for (int mask = candidates; mask != 0; mask &= mask - 1) {
+            int letter = Integer.numberOfTrailingZeros(mask);
+            prefix[state.getDepth()] = letter;
+            state.push(letter);
+            if (state.isViable()) {
+                addShards(state, prefix, shards);
+            }
+            state.pop();
+        }
+    }
+
+    /**
+     * ShardCoordinator <dictionary> <size> <workers> [shard depth]
+     */
+    public static void main(String[] args) throws IOException {
+        int size = Integer.parseInt(args[1]);
+        int workers = Integer.parseInt(args[2]);
+        int shardDepth = args.length > 3 ? Integer.parseInt(args[3]) : size;
+        ShardCoordinator coordinator = new ShardCoordinator(size, new File(args[0]), workers, shardDepth);
+        String grid = coordinator.solve(true);
+        if (grid != null) {
+            for (int i = 0; i < grid.length(); i++) {
+                if (i % size == 0) {
+                    System.out.print("\n");
+                }
+                System.out.print(grid.charAt(i));
+            }
+            System.out.print("\n");
+        } else {
+            System.err.println("No solution found.");
+        }
+    }
+}
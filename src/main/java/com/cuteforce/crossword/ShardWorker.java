@@ -0,0 +1,49 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Charsets;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Worker process of a {@link ShardCoordinator}. Reads shards from stdin, searches each with a
+ * {@link BruteForceCrossword} and reports the result on stdout, one line per shard:
+ *
+ * SHARD mask letter... searches the grids starting with the letter indexes and continuing with a letter in mask,
+ * and is answered with DONE deadends, or FOUND deadends grid if a grid was found. STOP or the end of the input
+ * ends the worker.
+ */
+public class ShardWorker {
+
+    static final String SHARD = "SHARD";
+    static final String STOP = "STOP";
+    static final String DONE = "DONE";
+    static final String FOUND = "FOUND";
+
+    /**
+     * ShardWorker <dictionary> <size>
+     */
+    public static void main(String[] args) throws IOException {
+        BruteForceCrossword cw = new BruteForceCrossword(Integer.parseInt(args[1]), new File(args[0]));
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, Charsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, Charsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null && line.startsWith(SHARD)) {
+            String[] fields = line.split(" ");
+            int letters = Integer.parseInt(fields[1]);
+            int[] prefix = new int[fields.length - 2];
+            for (int i = 0; i < prefix.length; i++) {
+                prefix[i] = Integer.parseInt(fields[i + 2]);
+            }
+            long deadends = cw.getDeadends();
+            String grid = cw.solve(prefix, letters, false);
+            deadends = cw.getDeadends() - deadends;
+            out.println(grid == null ? DONE + " " + deadends : FOUND + " " + deadends + " " + grid);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Solver for grids of any shape, with blocked cells. The layout is given as rows of '.' for an open cell and '#'
+ * for a block. Every run of two or more open cells across or down is a slot that must hold a word of its length.
+ *
+ * The words of all slot lengths are held in one {@link WordIndex}. Open cells are filled row by row, and each
+ * slot has a cursor into the index that advances with the letters placed in it. A letter must continue both the
+ * across and the down word of its cell, and the rest of the across word must still fit the letters the down
+ * words allow below it.
+ */
+public class SlotCrossword {
+
+    public static final char OPEN = '.';
+    public static final char BLOCK = '#';
+
+    private static final int MIN_LENGTH = 2;
+    private static final long REPORT_INTERVAL = 10000000;
+    private static final int BACKTRACKS_BETWEEN_CHECKS = 1 << 12;
+
+    private final WordIndex index;
+    private final int width;
+    private final int height;
+    private final int[] cells;
+    private final int[] acrossSlot;
+    private final int[] downSlot;
+    private final int[] slotLength;
+    private final int[] slotStart;
+
+    public SlotCrossword(String[] layout, File dictionary) throws IOException {
+        this(layout, new WordIndex(MIN_LENGTH, getMaxLength(layout), dictionary));
+    }
+
+    /**
+     * @param layout Rows of equal length.
+     * @param index  Index holding the words of every slot length in the layout.
+     */
+    public SlotCrossword(String[] layout, WordIndex index) {
+        Preconditions.checkArgument(layout.length > 0, "The layout has no rows.");
+        this.index = index;
+        this.height = layout.length;
+        this.width = layout[0].length();
+        for (String row : layout) {
+            Preconditions.checkArgument(row.length() == this.width, "Rows of the layout differ in length.");
+            Preconditions.checkArgument(row.chars().allMatch(c -> c == OPEN || c == BLOCK),
+                    "Layout rows may only hold '" + OPEN + "' and '" + BLOCK + "'.");
+        }
+        this.cells = getOpenCells(layout);
+        this.acrossSlot = new int[this.width * this.height];
+        this.downSlot = new int[this.width * this.height];
+        Arrays.fill(this.acrossSlot, -1);
+        Arrays.fill(this.downSlot, -1);
+        int[] lengths = new int[this.width * this.height];
+        int[] starts = new int[this.width * this.height];
+        int slots = addSlots(layout, 1, 0, this.acrossSlot, lengths, starts, 0);
+        slots = addSlots(layout, 0, 1, this.downSlot, lengths, starts, slots);
+        this.slotLength = Arrays.copyOf(lengths, slots);
+        this.slotStart = Arrays.copyOf(starts, slots);
+    }
+
+    private static int[] getOpenCells(String[] layout) {
+        int width = layout[0].length();
+        return IntStream.range(0, layout.length * width)
+            .filter(cell -> layout[cell / width].charAt(cell % width) == OPEN)
+            .toArray();
+    }
+
+    /**
+     * Number every run of at least {@link #MIN_LENGTH} open cells in the direction (dx, dy), and mark its cells.
+     *
+     * @return The number of slots so far.
+     */
+    private int addSlots(String[] layout, int dx, int dy, int[] cellSlot, int[] lengths, int[] starts, int slots) {
+        for (int row = 0; row < this.height; row++) {
+            for (int column = 0; column < this.width; column++) {
+                boolean startsRun = layout[row].charAt(column) == OPEN
+                        && (row - dy < 0 || column - dx < 0 || layout[row - dy].charAt(column - dx) == BLOCK);
+                if (!startsRun) {
+                    continue;
+                }
+                int length = 0;
+                while (row + length * dy < this.height && column + length * dx < this.width
+                        && layout[row + length * dy].charAt(column + length * dx) == OPEN) {
+                    length++;
+                }
+                if (length >= MIN_LENGTH) {
+                    for (int i = 0; i < length; i++) {
+                        cellSlot[(row + i * dy) * this.width + column + i * dx] = slots;
+                    }
+                    lengths[slots] = length;
+                    starts[slots++] = row * this.width + column;
+                }
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Length of the longest run of open cells in the layout.
+     */
+    static int getMaxLength(String[] layout) {
+        int max = MIN_LENGTH;
+        for (int row = 0; row < layout.length; row++) {
+            for (int column = 0; column < layout[row].length(); column++) {
+                int across = 0;
+                while (column + across < layout[row].length() && layout[row].charAt(column + across) == OPEN) {
+                    across++;
+                }
+                int down = 0;
+                while (row + down < layout.length && layout[row + down].charAt(column) == OPEN) {
+                    down++;
+                }
+                max = Math.max(max, Math.max(across, down));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Fill the layout.
+     *
+     * @return The rows of the grid joined by line breaks, with {@link #BLOCK} in the blocked cells, or null if
+     * there is none or the thread was interrupted.
+     */
+    public String solve(boolean debug) {
+        int[] slotNode = new int[this.slotLength.length];
+        for (int slot = 0; slot < slotNode.length; slot++) {
+            slotNode[slot] = this.index.getRoot(this.slotLength[slot]);
+            if (slotNode[slot] == WordIndex.NONE) {
+                return null;
+            }
+        }
+        int cellCount = this.cells.length;
+        int[] acrossTrail = new int[cellCount];
+        int[] downTrail = new int[cellCount];
+        int[] letters = new int[cellCount];
+        int[] pending = new int[cellCount + 1];
+        long deadends = 0;
+        long start = System.currentTimeMillis();
+
+        int depth = 0;
+        if (cellCount > 0) {
+            pending[0] = candidates(slotNode, 0);
+        }
+        while (depth < cellCount) {
+            int mask = pending[depth];
+            if (mask == 0) {
+                deadends++;
+                if (debug && deadends % REPORT_INTERVAL == 0) {
+                    System.err.println("Deadends " + deadends + ". "
+                            + (double) deadends / ((System.currentTimeMillis() - start) / 1000.0) + " deadends per second.");
+                }
+                if (depth == 0 || (deadends % BACKTRACKS_BETWEEN_CHECKS == 0 && Thread.currentThread().isInterrupted())) {
+                    return null;
+                }
+                depth--;
+                pop(slotNode, depth, acrossTrail, downTrail);
+                continue;
+            }
+            int letter = Integer.numberOfTrailingZeros(mask);
+            pending[depth] = mask & (mask - 1);
+            letters[depth] = letter;
+            push(slotNode, depth, letter, acrossTrail, downTrail);
+            if (isViable(slotNode, depth)) {
+                depth++;
+                if (depth < cellCount) {
+                    pending[depth] = candidates(slotNode, depth);
+                }
+            } else {
+                pop(slotNode, depth, acrossTrail, downTrail);
+            }
+        }
+        if (debug) {
+            System.err.println("Finished computing in " + (System.currentTimeMillis() - start) / 1000 + " seconds with "
+                    + deadends + " deadends.");
+        }
+        return getGrid(letters);
+    }
+
+    private int candidates(int[] slotNode, int depth) {
+        int cell = this.cells[depth];
+        int mask = this.index.getAlphabetSize() == Integer.SIZE ? -1 : (1 << this.index.getAlphabetSize()) - 1;
+        if (this.acrossSlot[cell] >= 0) {
+            mask &= this.index.getDaughterMask(slotNode[this.acrossSlot[cell]]);
+        }
+        if (this.downSlot[cell] >= 0) {
+            mask &= this.index.getDaughterMask(slotNode[this.downSlot[cell]]);
+        }
+        return mask;
+    }
+
+    private void push(int[] slotNode, int depth, int letter, int[] acrossTrail, int[] downTrail) {
+        int cell = this.cells[depth];
+        int across = this.acrossSlot[cell];
+        int down = this.downSlot[cell];
+        if (across >= 0) {
+            acrossTrail[depth] = slotNode[across];
+            slotNode[across] = this.index.getDaughter(slotNode[across], letter);
+        }
+        if (down >= 0) {
+            downTrail[depth] = slotNode[down];
+            slotNode[down] = this.index.getDaughter(slotNode[down], letter);
+        }
+    }
+
+    private void pop(int[] slotNode, int depth, int[] acrossTrail, int[] downTrail) {
+        int cell = this.cells[depth];
+        if (this.acrossSlot[cell] >= 0) {
+            slotNode[this.acrossSlot[cell]] = acrossTrail[depth];
+        }
+        if (this.downSlot[cell] >= 0) {
+            slotNode[this.downSlot[cell]] = downTrail[depth];
+        }
+    }
+
+    /**
+     * Whether every later cell of the across word just extended can still take a letter that continues its down
+     * word. The cells above them are filled, so the next letter of each down word is the one in that cell.
+     */
+    private boolean isViable(int[] slotNode, int depth) {
+        int cell = this.cells[depth];
+        int across = this.acrossSlot[cell];
+        if (across < 0) {
+            return true;
+        }
+        int node = slotNode[across];
+        int end = this.slotStart[across] + this.slotLength[across];
+        for (int next = cell + 1; next < end; next++) {
+            int down = this.downSlot[next];
+            if (down >= 0 && (this.index.getPositionMask(node, next - cell - 1) & this.index.getDaughterMask(slotNode[down])) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getGrid(int[] letters) {
+        char[] grid = new char[this.width * this.height];
+        Arrays.fill(grid, BLOCK);
+        for (int i = 0; i < this.cells.length; i++) {
+            grid[this.cells[i]] = this.index.getLetter(letters[i]);
+        }
+        StringBuilder rows = new StringBuilder();
+        for (int row = 0; row < this.height; row++) {
+            if (row > 0) {
+                rows.append('\n');
+            }
+            rows.append(grid, row * this.width, this.width);
+        }
+        return rows.toString();
+    }
+
+    /**
+     * SlotCrossword <dictionary> <layout file>
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> rows = Files.readLines(new File(args[1]), Charsets.UTF_8);
+        rows.removeIf(String::isEmpty);
+        SlotCrossword cw = new SlotCrossword(rows.toArray(new String[rows.size()]), new File(args[0]));
+        String grid = cw.solve(true);
+        if (grid != null) {
+            System.out.println(grid);
+        } else {
+            System.err.println("No solution found.");
+        }
+    }
+}
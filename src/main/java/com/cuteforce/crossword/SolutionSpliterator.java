@@ -0,0 +1,48 @@
+package com.cuteforce.crossword;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over all grids in the subtree of a search state. Each grid is found only when it is asked for, so
+ * the solutions are never held in memory together.
+ *
+ * Splitting hands half of the untried letters at the shallowest open depth to the new spliterator, as
+ * {@link SearchState#split(int)} does for the fork/join workers.
+ */
+final class SolutionSpliterator implements Spliterator<String> {
+
+    private final SearchState state;
+
+    SolutionSpliterator(SearchState state) {
+        this.state = state;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (this.state.advance(Long.MAX_VALUE) != SearchState.FOUND) {
+            return false;
+        }
+        action.accept(this.state.getLetters());
+        return true;
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        if (this.state.isComplete()) {
+            return null;
+        }
+        SearchState split = this.state.split(Integer.MAX_VALUE);
+        return split == null ? null : new SolutionSpliterator(split);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT | IMMUTABLE;
+    }
+}
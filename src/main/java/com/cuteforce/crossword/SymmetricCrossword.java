@@ -0,0 +1,134 @@
+package com.cuteforce.crossword;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Solver for symmetric word squares, where row i and column i are the same word.
+ *
+ * Only the cells on and above the diagonal are filled, row by row. Word i has a single trie cursor serving as
+ * both row i and column i, and a letter placed in cell (i, j) advances the cursors of words i and j, which puts
+ * it in cell (j, i) as well. Each letter is still checked against two words, its row and its column, but a
+ * mirrored pair of cells is filled with one letter choice, so the search decides size * (size + 1) / 2 cells
+ * instead of size * size.
+ */
+public class SymmetricCrossword {
+
+    private static final long REPORT_INTERVAL = 10000000;
+
+    private final int size;
+    private final Dictionary dictionary;
+    private final int[] cellRow;
+    private final int[] cellColumn;
+
+    public SymmetricCrossword(int size, File dictionary) throws IOException {
+        this(Dictionary.open(size, dictionary));
+    }
+
+    public SymmetricCrossword(Dictionary dictionary) {
+        this.size = dictionary.getSize();
+        this.dictionary = dictionary;
+        int cells = this.size * (this.size + 1) / 2;
+        this.cellRow = new int[cells];
+        this.cellColumn = new int[cells];
+        int cell = 0;
+        for (int row = 0; row < this.size; row++) {
+            for (int column = row; column < this.size; column++) {
+                this.cellRow[cell] = row;
+                this.cellColumn[cell++] = column;
+            }
+        }
+    }
+
+    /**
+     * Find a symmetric crossword of the given size.
+     */
+    public String solve(boolean debug) {
+        int cells = this.cellRow.length;
+        int[] words = new int[this.size];
+        int[] rowTrail = new int[cells];
+        int[] columnTrail = new int[cells];
+        int[] letters = new int[cells];
+        int[] pending = new int[cells + 1];
+        long deadends = 0;
+        long start = System.currentTimeMillis();
+
+        int depth = 0;
+        pending[0] = candidates(words, 0);
+        while (depth < cells) {
+            int mask = pending[depth];
+            if (mask == 0) {
+                if (debug && ++deadends % REPORT_INTERVAL == 0) {
+                    long now = System.currentTimeMillis();
+                    System.err.println("Total deadends " + deadends + ". " + (double) deadends / ((now - start) / 1000.0) + " deadends per second.");
+                }
+                if (--depth < 0) {
+                    return null;
+                }
+                words[this.cellColumn[depth]] = columnTrail[depth];
+                words[this.cellRow[depth]] = rowTrail[depth];
+                continue;
+            }
+            pending[depth] = mask & (mask - 1);
+            int letter = Integer.numberOfTrailingZeros(mask);
+            int row = this.cellRow[depth];
+            int column = this.cellColumn[depth];
+            rowTrail[depth] = words[row];
+            columnTrail[depth] = words[column];
+            words[row] = this.dictionary.getDaughter(words[row], letter);
+            if (column != row) {
+                words[column] = this.dictionary.getDaughter(words[column], letter);
+            }
+            letters[depth++] = letter;
+            if (depth < cells) {
+                pending[depth] = isViable(words, depth) ? candidates(words, depth) : 0;
+            }
+        }
+
+        char[] grid = new char[this.size * this.size];
+        for (int cell = 0; cell < cells; cell++) {
+            char letter = this.dictionary.getLetter(letters[cell]);
+            grid[this.cellRow[cell] * this.size + this.cellColumn[cell]] = letter;
+            grid[this.cellColumn[cell] * this.size + this.cellRow[cell]] = letter;
+        }
+        return new String(grid);
+    }
+
+    /**
+     * Letters that continue both words through the cell.
+     */
+    private int candidates(int[] words, int cell) {
+        return this.dictionary.getDaughterMask(words[this.cellRow[cell]])
+                & this.dictionary.getDaughterMask(words[this.cellColumn[cell]]);
+    }
+
+    /**
+     * Whether every remaining cell of the current row can still get a letter that continues both of its words.
+     */
+    private boolean isViable(int[] words, int cell) {
+        int row = this.cellRow[cell];
+        for (int column = this.cellColumn[cell]; column < this.size; column++) {
+            if ((this.dictionary.getPositionMask(words[row], column) & this.dictionary.getDaughterMask(words[column])) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = Integer.parseInt(args[1]);
+        SymmetricCrossword cw = new SymmetricCrossword(size, new File(args[0]));
+        String grid = cw.solve(true);
+        if (grid != null) {
+            for (int i = 0; i < grid.length(); i++) {
+                if (i % size == 0) {
+                    System.out.print("\n");
+                }
+                System.out.print(grid.charAt(i));
+            }
+            System.out.print("\n");
+        } else {
+            System.err.println("No solution found.");
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Mutable trie of the words of one length, used while reading a word list before it is frozen into a
+ * {@link Dictionary}.
+ *
+ * Nodes are ids into growable arrays: each node links to its first daughter and to its next sister. A word is
+ * added by walking and extending that path, so adding a word twice leaves the trie unchanged and no set of seen
+ * words is needed. Word counts are not kept here; they follow from the leaves when the trie is frozen.
+ *
+ * Large word lists are read with {@link #read(File, int)}, which splits the file into byte ranges, builds a
+ * trie per range in parallel and merges them. {@link #read(File, int, int)} fills a trie for each of several
+ * lengths in the same pass.
+ */
+final class TrieBuilder {
+
+    static final int ROOT = 0;
+    static final int NONE = -1;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MIN_RANGE_BYTES = 1 << 20;
+
+    private final int size;
+    private int[] firstDaughter;
+    private int[] nextSister;
+    private char[] letter;
+    private int nodes;
+
+    TrieBuilder(int size) {
+        this.size = size;
+        this.firstDaughter = new int[16];
+        this.nextSister = new int[16];
+        this.letter = new char[16];
+        this.firstDaughter[ROOT] = NONE;
+        this.nextSister[ROOT] = NONE;
+        this.nodes = 1;
+    }
+
+    /**
+     * Read the words of the given length from a word list of type
+     * cars.car
+     * men.man
+     * etc
+     */
+    static TrieBuilder read(File dictionaryName, int size) throws IOException {
+        return read(dictionaryName, size, size)[0];
+    }
+
+    /**
+     * Read the words of every length from minLength to maxLength in one pass over the word list. Element i of the
+     * result holds the words of length minLength + i.
+     */
+    static TrieBuilder[] read(File dictionaryName, int minLength, int maxLength) throws IOException {
+        long length = dictionaryName.length();
+        int ranges = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), length / MIN_RANGE_BYTES));
+        return read(dictionaryName, minLength, maxLength, ranges);
+    }
+
+    /**
+     * Read the words of every length from minLength to maxLength, splitting the word list into the given number
+     * of byte ranges. The result does not depend on the number of ranges.
+     */
+    static TrieBuilder[] read(File dictionaryName, int minLength, int maxLength, int ranges) throws IOException {
+        long length = dictionaryName.length();
+        try (FileChannel channel = FileChannel.open(dictionaryName.toPath(), StandardOpenOption.READ)) {
+            return IntStream.range(0, ranges)
+                .parallel()
+                .mapToObj(range -> {
+                    TrieBuilder[] builders = new TrieBuilder[maxLength - minLength + 1];
+                    for (int i = 0; i < builders.length; i++) {
+                        builders[i] = new TrieBuilder(minLength + i);
+                    }
+                    try {
+                        read(channel, length * range / ranges, length * (range + 1) / ranges, builders);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return builders;
+                })
+                .reduce((a, b) -> {
+                    for (int i = 0; i < a.length; i++) {
+                        a[i] = merge(a[i], b[i]);
+                    }
+                    return a;
+                })
+                .get();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Add the words on the lines that start in the byte range [start, end) to the builder of their length. Words
+     * are separated by dots and line breaks.
+     */
+    private static void read(FileChannel channel, long start, long end, TrieBuilder[] builders) throws IOException {
+        int maxLength = builders[builders.length - 1].size;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        byte[] token = new byte[3 * maxLength + 1];
+        char[] word = new char[maxLength];
+        int tokenLength = 0;
+        long position = start;
+        boolean lineStart = true;
+        if (start > 0) {
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            channel.read(previous, start - 1);
+            lineStart = previous.get(0) == '\n';
+        }
+        boolean skipping = !lineStart;
+
+        read:
+        while (channel.read(buffer, position) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                if (lineStart && position >= end) {
+                    break read;
+                }
+                byte b = buffer.get();
+                position++;
+                lineStart = b == '\n';
+                if (skipping) {
+                    skipping = !lineStart;
+                } else if (b == '.' || b == '\n' || b == '\r') {
+                    addToken(token, tokenLength, word, builders);
+                    tokenLength = 0;
+                } else if (tokenLength < token.length) {
+                    token[tokenLength++] = b;
+                }
+            }
+            buffer.clear();
+        }
+        addToken(token, tokenLength, word, builders);
+    }
+
+    /**
+     * Add the UTF-8 token to the builder of its length once lowercased, if there is one. Tokens longer than any
+     * such word are cut short by the caller, and fail the length check here.
+     */
+    private static void addToken(byte[] token, int length, char[] word, TrieBuilder[] builders) {
+        int minLength = builders[0].size;
+        if (length < minLength || length >= token.length) {
+            return;
+        }
+        boolean ascii = length <= word.length;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = token[i] >= 0;
+            word[i] = Character.toLowerCase((char) token[i]);
+        }
+        if (ascii) {
+            builders[length - minLength].add(word, length);
+        } else {
+            String decoded = new String(token, 0, length, Charsets.UTF_8).toLowerCase();
+            if (decoded.length() >= minLength && decoded.length() <= word.length) {
+                builders[decoded.length() - minLength].add(decoded.toCharArray(), decoded.length());
+            }
+        }
+    }
+
+    /**
+     * Add a word of the builder's length. Adding a word that is already present has no effect.
+     */
+    void add(char[] word) {
+        add(word, word.length);
+    }
+
+    private void add(char[] word, int length) {
+        int node = ROOT;
+        for (int i = 0; i < length; i++) {
+            node = getOrAddDaughter(node, word[i]);
+        }
+    }
+
+    /**
+     * Add all words of the other trie to the larger of the two, and return that one.
+     */
+    static TrieBuilder merge(TrieBuilder a, TrieBuilder b) {
+        TrieBuilder into = a.nodes >= b.nodes ? a : b;
+        TrieBuilder from = into == a ? b : a;
+        int[] fromStack = new int[from.size + 1];
+        int[] intoStack = new int[from.size + 1];
+        int depth = 0;
+        fromStack[0] = from.firstDaughter[ROOT];
+        intoStack[0] = ROOT;
+        while (depth >= 0) {
+            int node = fromStack[depth];
+            if (node == NONE) {
+                depth--;
+                continue;
+            }
+            fromStack[depth] = from.nextSister[node];
+            int daughter = into.getOrAddDaughter(intoStack[depth], from.letter[node]);
+            depth++;
+            fromStack[depth] = from.firstDaughter[node];
+            intoStack[depth] = daughter;
+        }
+        return into;
+    }
+
+    private int getOrAddDaughter(int node, char c) {
+        int previous = NONE;
+        for (int daughter = this.firstDaughter[node]; daughter != NONE; daughter = this.nextSister[daughter]) {
+            if (this.letter[daughter] == c) {
+                return daughter;
+            }
+            previous = daughter;
+        }
+        if (this.nodes == this.letter.length) {
+            int capacity = 2 * this.nodes;
+            this.firstDaughter = Arrays.copyOf(this.firstDaughter, capacity);
+            this.nextSister = Arrays.copyOf(this.nextSister, capacity);
+            this.letter = Arrays.copyOf(this.letter, capacity);
+        }
+        int added = this.nodes++;
+        this.firstDaughter[added] = NONE;
+        this.nextSister[added] = NONE;
+        this.letter[added] = c;
+        if (previous == NONE) {
+            this.firstDaughter[node] = added;
+        } else {
+            this.nextSister[previous] = added;
+        }
+        return added;
+    }
+
+    int getSize() {
+        return this.size;
+    }
+
+    int getNodeCount() {
+        return this.nodes;
+    }
+
+    /**
+     * First daughter of the node in insertion order, or {@link #NONE}.
+     */
+    int getFirstDaughter(int node) {
+        return this.firstDaughter[node];
+    }
+
+    /**
+     * Next daughter of the same mother in insertion order, or {@link #NONE}.
+     */
+    int getNextSister(int node) {
+        return this.nextSister[node];
+    }
+
+    char getLetter(int node) {
+        return this.letter[node];
+    }
+}
@@ -0,0 +1,57 @@
+package com.cuteforce.crossword;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Flat arrays of a frozen {@link Dictionary} trie, indexed by node id.
+ *
+ * The arrays live either on the heap or in a memory-mapped compiled dictionary. Only one of the two is normally
+ * used in a process, so the calls stay monomorphic and are inlined into the search loops.
+ */
+interface TrieStorage {
+
+    int getNodeCount();
+
+    int getPositionMaskCount();
+
+    int getDaughterMask(int node);
+
+    int getFirstDaughter(int node);
+
+    int getFrequency(int node);
+
+    int getPositionMask(int node, int position);
+
+    /**
+     * Whether for every position from the first one up to masks.length, the mask of the node at that position
+     * shares a letter with masks[position].
+     */
+    boolean intersectsPositionMasks(int node, int[] masks, int first);
+
+    float getSortedProbability(int daughter);
+
+    int getSortedLetter(int daughter);
+
+    /**
+     * Write the arrays in the compiled format, starting at the position of the buffer.
+     */
+    void write(ByteBuffer buffer);
+
+    /**
+     * Bytes taken by the arrays in the compiled format.
+     */
+    static long getByteSize(int nodes, int positionMasks) {
+        return (4L * nodes + positionMasks) * Integer.BYTES + (long) nodes * Float.BYTES + nodes;
+    }
+
+    /**
+     * The next length bytes of the buffer as a little-endian buffer of their own, moving the position past them.
+     */
+    static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+}
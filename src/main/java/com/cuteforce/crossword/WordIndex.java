@@ -0,0 +1,300 @@
+package com.cuteforce.crossword;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Read-only index of the words of every length in a range, for grids whose slots have different lengths.
+ *
+ * The words of each length are read into a {@link TrieBuilder} in one pass over the word list, and all the tries
+ * are then minimized into one directed acyclic word graph: nodes with the same daughters under the same letters
+ * are stored once, also across lengths. Every word ends in the shared final node, and words of different lengths
+ * with a common ending share the nodes of that ending, so the index of all lengths is about as large as the
+ * trie of a single length.
+ *
+ * As in {@link Dictionary}, each node holds a 32-bit mask of its daughter letters and the masks of the letters
+ * that can appear at each later position below it. Since nodes are shared by words that started at different
+ * depths, positions are counted from the node rather than from the start of the word.
+ */
+public class WordIndex {
+
+    public static final int NONE = -1;
+
+    /**
+     * Node reached at the end of every word.
+     */
+    public static final int FINAL = 0;
+
+    /**
+     * Daughter mask of a node followed by the ids of its daughters in letter order. Nodes with equal signatures
+     * are merged.
+     */
+    private static final class Signature {
+        final int[] values;
+
+        Signature(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature && Arrays.equals(this.values, ((Signature) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.values);
+        }
+    }
+
+    private final int minLength;
+    private final int maxLength;
+    private final char[] alphabet;
+    private final int[] roots;
+    private final long[] wordCounts;
+    private int[] daughterMask;
+    private int[] edgeOffset;
+    private int[] remaining;
+    private int[] edges;
+    private final int[] positionOffset;
+    private final int[] positionMasks;
+    private int nodes;
+    private int edgeCount;
+
+    /**
+     * Index the words of length minLength to maxLength in a word list of type
+     * cars.car
+     * men.man
+     * etc
+     */
+    public WordIndex(int minLength, int maxLength, File dictionaryName) throws IOException {
+        this(TrieBuilder.read(dictionaryName, minLength, maxLength));
+    }
+
+    /**
+     * Minimize the builders, which hold the words of consecutive lengths, into one graph.
+     */
+    WordIndex(TrieBuilder... builders) {
+        this.minLength = builders[0].getSize();
+        this.maxLength = builders[builders.length - 1].getSize();
+        this.alphabet = getAlphabet(builders);
+        Preconditions.checkState(this.alphabet.length <= Integer.SIZE,
+                "Word list uses " + this.alphabet.length + " different letters, at most " + Integer.SIZE + " are supported.");
+
+        this.daughterMask = new int[16];
+        this.edgeOffset = new int[16];
+        this.remaining = new int[16];
+        this.edges = new int[16];
+        Map<Signature, Integer> register = Maps.newHashMap();
+        register.put(new Signature(new int[] {0}), addNode(0, new int[] {0}, 0));
+        this.roots = new int[builders.length];
+        for (int i = 0; i < builders.length; i++) {
+            this.roots[i] = minimize(builders[i], register);
+        }
+
+        this.positionOffset = new int[this.nodes];
+        this.positionMasks = getPositionMasks();
+        long[] paths = new long[this.nodes];
+        paths[FINAL] = 1;
+        for (int node = FINAL + 1; node < this.nodes; node++) {
+            for (int edge = this.edgeOffset[node]; edge < this.edgeOffset[node] + Integer.bitCount(this.daughterMask[node]); edge++) {
+                paths[node] += paths[this.edges[edge]];
+            }
+        }
+        this.wordCounts = new long[builders.length];
+        for (int i = 0; i < builders.length; i++) {
+            this.wordCounts[i] = this.roots[i] == NONE ? 0 : paths[this.roots[i]];
+        }
+    }
+
+    /**
+     * Add the nodes of the trie that are not in the register yet, daughters before mothers, and return the id of
+     * its root, or {@link #NONE} if the trie has no words.
+     */
+    private int minimize(TrieBuilder builder, Map<Signature, Integer> register) {
+        if (builder.getFirstDaughter(TrieBuilder.ROOT) == TrieBuilder.NONE) {
+            return NONE;
+        }
+        int[] ids = new int[builder.getNodeCount()];
+        int[] stack = new int[builder.getSize() + 1];
+        int[] next = new int[builder.getSize() + 1];
+        int[] daughters = new int[Integer.SIZE];
+        int depth = 0;
+        stack[0] = TrieBuilder.ROOT;
+        next[0] = builder.getFirstDaughter(TrieBuilder.ROOT);
+        while (depth >= 0) {
+            int daughter = next[depth];
+            if (daughter != TrieBuilder.NONE) {
+                next[depth] = builder.getNextSister(daughter);
+                depth++;
+                stack[depth] = daughter;
+                next[depth] = builder.getFirstDaughter(daughter);
+                continue;
+            }
+            int node = stack[depth--];
+            int mask = 0;
+            for (daughter = builder.getFirstDaughter(node); daughter != TrieBuilder.NONE; daughter = builder.getNextSister(daughter)) {
+                int letterIndex = Arrays.binarySearch(this.alphabet, builder.getLetter(daughter));
+                mask |= 1 << letterIndex;
+                daughters[letterIndex] = ids[daughter];
+            }
+            int[] signature = new int[1 + Integer.bitCount(mask)];
+            signature[0] = mask;
+            int i = 1;
+            for (int m = mask; m != 0; m &= m - 1) {
+                signature[i++] = daughters[Integer.numberOfTrailingZeros(m)];
+            }
+            Signature key = new Signature(signature);
+            Integer id = register.get(key);
+            if (id == null) {
+                id = addNode(mask, signature, mask == 0 ? 0 : this.remaining[signature[1]] + 1);
+                register.put(key, id);
+            }
+            ids[node] = id;
+        }
+        return ids[TrieBuilder.ROOT];
+    }
+
+    private int addNode(int mask, int[] signature, int remainingLetters) {
+        if (this.nodes == this.daughterMask.length) {
+            int capacity = 2 * this.nodes;
+            this.daughterMask = Arrays.copyOf(this.daughterMask, capacity);
+            this.edgeOffset = Arrays.copyOf(this.edgeOffset, capacity);
+            this.remaining = Arrays.copyOf(this.remaining, capacity);
+        }
+        int daughters = Integer.bitCount(mask);
+        if (this.edgeCount + daughters > this.edges.length) {
+            this.edges = Arrays.copyOf(this.edges, Math.max(2 * this.edges.length, this.edgeCount + daughters));
+        }
+        System.arraycopy(signature, 1, this.edges, this.edgeCount, daughters);
+        int id = this.nodes++;
+        this.daughterMask[id] = mask;
+        this.edgeOffset[id] = this.edgeCount;
+        this.remaining[id] = remainingLetters;
+        this.edgeCount += daughters;
+        return id;
+    }
+
+    /**
+     * For every node, the letters that can appear at each of its remaining positions. Daughters have lower ids
+     * than their mothers, so their masks are done first.
+     */
+    private int[] getPositionMasks() {
+        int total = 0;
+        for (int node = 0; node < this.nodes; node++) {
+            this.positionOffset[node] = total;
+            total += this.remaining[node];
+        }
+        int[] masks = new int[total];
+        for (int node = FINAL + 1; node < this.nodes; node++) {
+            int offset = this.positionOffset[node];
+            masks[offset] = this.daughterMask[node];
+            for (int edge = this.edgeOffset[node]; edge < this.edgeOffset[node] + Integer.bitCount(this.daughterMask[node]); edge++) {
+                int daughter = this.edges[edge];
+                for (int position = 1; position < this.remaining[node]; position++) {
+                    masks[offset + position] |= masks[this.positionOffset[daughter] + position - 1];
+                }
+            }
+        }
+        return masks;
+    }
+
+    private static char[] getAlphabet(TrieBuilder[] builders) {
+        BitSet letters = new BitSet(Character.MAX_VALUE + 1);
+        for (TrieBuilder builder : builders) {
+            for (int node = TrieBuilder.ROOT + 1; node < builder.getNodeCount(); node++) {
+                letters.set(builder.getLetter(node));
+            }
+        }
+        char[] alphabet = new char[letters.cardinality()];
+        for (int i = 0, letter = letters.nextSetBit(0); letter >= 0; i++, letter = letters.nextSetBit(letter + 1)) {
+            alphabet[i] = (char) letter;
+        }
+        return alphabet;
+    }
+
+    public int getMinLength() {
+        return this.minLength;
+    }
+
+    public int getMaxLength() {
+        return this.maxLength;
+    }
+
+    /**
+     * Node that starts the words of the given length, or {@link #NONE} if there are none.
+     */
+    public int getRoot(int length) {
+        return length < this.minLength || length > this.maxLength ? NONE : this.roots[length - this.minLength];
+    }
+
+    public long getWordCount(int length) {
+        return length < this.minLength || length > this.maxLength ? 0 : this.wordCounts[length - this.minLength];
+    }
+
+    public int getNodeCount() {
+        return this.nodes;
+    }
+
+    public int getAlphabetSize() {
+        return this.alphabet.length;
+    }
+
+    public char getLetter(int letterIndex) {
+        return this.alphabet[letterIndex];
+    }
+
+    /**
+     * Index of the letter in the alphabet, or -1 if no word contains it.
+     */
+    public int letterIndex(char letter) {
+        int index = Arrays.binarySearch(this.alphabet, letter);
+        return index < 0 ? -1 : index;
+    }
+
+    public int getDaughterMask(int node) {
+        return this.daughterMask[node];
+    }
+
+    /**
+     * Letters that can appear the given number of letters after the node, where 0 is the next letter. The offset
+     * must be less than the number of letters left below the node.
+     */
+    public int getPositionMask(int node, int offset) {
+        return this.positionMasks[this.positionOffset[node] + offset];
+    }
+
+    /**
+     * Number of letters left in every word below the node.
+     */
+    public int getRemaining(int node) {
+        return this.remaining[node];
+    }
+
+    /**
+     * @return The node following the letter, or {@link #NONE} if no word continues with it.
+     */
+    public int getDaughter(int node, int letterIndex) {
+        int mask = this.daughterMask[node];
+        int bit = 1 << letterIndex;
+        if ((mask & bit) == 0) {
+            return NONE;
+        }
+        return this.edges[this.edgeOffset[node] + Integer.bitCount(mask & (bit - 1))];
+    }
+
+    public boolean contains(String word) {
+        int node = getRoot(word.length());
+        for (int i = 0; i < word.length() && node != NONE; i++) {
+            int letterIndex = letterIndex(word.charAt(i));
+            node = letterIndex < 0 ? NONE : getDaughter(node, letterIndex);
+        }
+        return node == FINAL;
+    }
+}
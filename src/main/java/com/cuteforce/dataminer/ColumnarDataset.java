@@ -0,0 +1,499 @@
+package com.cuteforce.dataminer;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.cuteforce.dataminer.Dataset.Type;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Dataset stored by column: the values of a FLOAT attribute in a DoubleBuffer, and the codes of a NOMINAL
+ * attribute in an IntBuffer, with the values numbered in the order they were first seen. Ignored attributes are
+ * not stored.
+ *
+ * A column is one primitive array instead of a DenseInstance per row, so statistics scan a column without
+ * touching the others. The Weka Instances are made on the first call to {@link #getInstances()}, when a
+ * classifier needs them.
+ *
+ * A dataset saved with {@link #save(File)} is memory-mapped by {@link #load(File)}, and its columns are read from
+ * the mapped file without parsing the text again. {@link #open(List, List, File)} uses such a file as a cache of
+ * the text files.
+ */
+public class ColumnarDataset {
+
+    private static final int INITIAL_ROWS = 1 << 10;
+
+    private static final int MAGIC = 0x43574453;
+    private static final int VERSION = 1;
+    private static final int ALIGNMENT = Double.BYTES;
+
+    /**
+     * Size and modification time of a file a dataset was read from, to tell whether a cache of it is current.
+     */
+    private static final class Source {
+        final String path;
+        final long size;
+        final long lastModified;
+
+        Source(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        static Source of(String path) throws IOException {
+            Path file = new File(path).toPath();
+            return new Source(file.toAbsolutePath().toString(), Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) o;
+            return this.path.equals(other.path) && this.size == other.size && this.lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(this.path, this.size, this.lastModified);
+        }
+    }
+
+    private final List<Source> sources;
+    private final List<Entry<String, Type>> nameAndType;
+    private final List<String> names;
+    private final List<Type> types;
+    private final int rows;
+    private final DoubleBuffer[] doubles;
+    private final IntBuffer[] codes;
+    private final List<List<String>> nominalValues;
+    private Instances instances;
+
+    /**
+     * @param sources       Files the rows were read from.
+     * @param nameAndType   Attributes of the files, including the ignored ones.
+     * @param doubles       Values of every FLOAT column, null for the others.
+     * @param codes         Codes of every NOMINAL column, null for the others.
+     * @param nominalValues Values of every NOMINAL column in the order of their codes, null for the others.
+     */
+    private ColumnarDataset(List<Source> sources, List<Entry<String, Type>> nameAndType, int rows, DoubleBuffer[] doubles, IntBuffer[] codes, List<List<String>> nominalValues) {
+        this.sources = ImmutableList.copyOf(sources);
+        ImmutableList.Builder<Entry<String, Type>> fields = ImmutableList.builder();
+        ImmutableList.Builder<String> names = ImmutableList.builder();
+        ImmutableList.Builder<Type> types = ImmutableList.builder();
+        for (Entry<String, Type> entry : nameAndType) {
+            fields.add(Maps.immutableEntry(entry.getKey(), entry.getValue()));
+            if (entry.getValue() != Type.IGNORE) {
+                names.add(entry.getKey());
+                types.add(entry.getValue());
+            }
+        }
+        this.nameAndType = fields.build();
+        this.names = names.build();
+        this.types = types.build();
+        this.rows = rows;
+        this.doubles = doubles;
+        this.codes = codes;
+        this.nominalValues = nominalValues;
+    }
+
+    /**
+     * Read a dataset in one pass. The class is the last attribute.
+     *
+     * @param files Dataset of comma-separated attributes
+     * @param nameAndType List of entries containing attribute name and data type. Must be ordered similar to the data file.
+     */
+    public static ColumnarDataset create(List<String> files, List<Entry<String, Type>> nameAndType) throws IOException {
+        Preconditions.checkArgument(Iterables.getLast(nameAndType).getValue() != Type.IGNORE, "The class attribute is ignored.");
+        List<String> names = Lists.newArrayList();
+        List<Type> types = Lists.newArrayList();
+        // Resolve the types and column indexes of the fields once, rather than for every cell.
+        Type[] fieldTypes = new Type[nameAndType.size()];
+        int[] fieldColumn = new int[nameAndType.size()];
+        for (int i = 0; i < fieldTypes.length; i++) {
+            fieldTypes[i] = nameAndType.get(i).getValue();
+            fieldColumn[i] = fieldTypes[i] == Type.IGNORE ? -1 : names.size();
+            if (fieldTypes[i] != Type.IGNORE) {
+                names.add(nameAndType.get(i).getKey());
+                types.add(fieldTypes[i]);
+            }
+        }
+
+        int columns = names.size();
+        double[][] doubles = new double[columns][];
+        int[][] codes = new int[columns][];
+        NominalDictionary[] dictionaries = new NominalDictionary[columns];
+        for (int column = 0; column < columns; column++) {
+            if (types.get(column) == Type.FLOAT) {
+                doubles[column] = new double[INITIAL_ROWS];
+            } else {
+                codes[column] = new int[INITIAL_ROWS];
+                dictionaries[column] = new NominalDictionary();
+            }
+        }
+        List<Source> sources = Lists.newArrayList();
+        int rows = 0;
+        for (String filePath : files) {
+            sources.add(Source.of(filePath));
+            try (CsvTokenizer tokenizer = new CsvTokenizer(FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ))) {
+                while (tokenizer.next()) {
+                    Preconditions.checkState(tokenizer.getFieldCount() == fieldTypes.length, "Invalid input in line: " + tokenizer.getLine());
+                    if (rows == capacity(doubles[0], codes[0])) {
+                        grow(doubles, codes);
+                    }
+                    for (int i = 0; i < fieldTypes.length; i++) {
+                        if (fieldTypes[i] == Type.NOMINAL) {
+                            codes[fieldColumn[i]][rows] = tokenizer.getCode(i, dictionaries[fieldColumn[i]]);
+                        } else if (fieldTypes[i] == Type.FLOAT) {
+                            doubles[fieldColumn[i]][rows] = tokenizer.getDouble(i);
+                        }
+                    }
+                    rows++;
+                }
+            }
+        }
+
+        DoubleBuffer[] doubleColumns = new DoubleBuffer[columns];
+        IntBuffer[] codeColumns = new IntBuffer[columns];
+        List<List<String>> nominalValues = Lists.newArrayList();
+        for (int column = 0; column < columns; column++) {
+            doubleColumns[column] = doubles[column] == null ? null : DoubleBuffer.wrap(doubles[column], 0, rows).slice();
+            codeColumns[column] = codes[column] == null ? null : IntBuffer.wrap(codes[column], 0, rows).slice();
+            nominalValues.add(dictionaries[column] == null ? null : ImmutableList.copyOf(dictionaries[column].getValues()));
+        }
+        return new ColumnarDataset(sources, nameAndType, rows, doubleColumns, codeColumns, nominalValues);
+    }
+
+    private static int capacity(double[] doubles, int[] codes) {
+        return doubles != null ? doubles.length : codes.length;
+    }
+
+    private static void grow(double[][] doubles, int[][] codes) {
+        for (int column = 0; column < doubles.length; column++) {
+            if (doubles[column] != null) {
+                doubles[column] = Arrays.copyOf(doubles[column], 2 * doubles[column].length);
+            } else {
+                codes[column] = Arrays.copyOf(codes[column], 2 * codes[column].length);
+            }
+        }
+    }
+
+    /**
+     * Read a dataset through a cache file. The cache is used if it was written from the same files, with the same
+     * sizes and modification times, and the same attributes; otherwise the files are read and the cache is
+     * rewritten. A cache that cannot be loaded, such as one of another version or one that is cut off, is deleted
+     * and rewritten as well.
+     *
+     * @see #create(List, List)
+     */
+    public static ColumnarDataset open(List<String> files, List<Entry<String, Type>> nameAndType, File cache) throws IOException {
+        if (cache.isFile()) {
+            List<Source> sources = Lists.newArrayList();
+            for (String filePath : files) {
+                sources.add(Source.of(filePath));
+            }
+            ColumnarDataset cached = null;
+            try {
+                cached = load(cache);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Rewriting dataset cache " + cache + ": " + e);
+                Files.delete(cache.toPath());
+            }
+            if (cached != null && cached.sources.equals(sources) && cached.nameAndType.equals(nameAndType)) {
+                return cached;
+            }
+        }
+        ColumnarDataset dataset = create(files, nameAndType);
+        dataset.save(cache);
+        return dataset;
+    }
+
+    /**
+     * Write the dataset in a binary format that {@link #load(File)} can map: a header with the source files, the
+     * attributes and the nominal values, followed by one block per column. The file is written next to the cache
+     * and then moved over it, so a cache is never left half written.
+     */
+    public void save(File cache) throws IOException {
+        ByteBuffer header = getHeader();
+        long length = header.remaining();
+        for (int column = 0; column < numColumns(); column++) {
+            length += getColumnBytes(column);
+        }
+        File temporary = new File(cache.getPath() + ".tmp");
+        Files.deleteIfExists(temporary.toPath());
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(header);
+            long position = channel.position();
+            for (int column = 0; column < numColumns(); column++) {
+                MappedByteBuffer block = channel.map(MapMode.READ_WRITE, position, getColumnBytes(column));
+                block.order(ByteOrder.LITTLE_ENDIAN);
+                if (this.doubles[column] != null) {
+                    block.asDoubleBuffer().put(this.doubles[column].duplicate());
+                } else {
+                    block.asIntBuffer().put(this.codes[column].duplicate());
+                }
+                block.force();
+                position += getColumnBytes(column);
+            }
+            Preconditions.checkState(position == length);
+        }
+        Files.move(temporary.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Memory-map a dataset written by {@link #save(File)}. Only the header is read; the columns are read from
+     * the mapped file as they are used.
+     *
+     * @throws IllegalArgumentException If the file is not a dataset cache of this version, or is cut off.
+     */
+    public static ColumnarDataset load(File cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(start, 0);
+            start.flip();
+            Preconditions.checkArgument(start.remaining() == start.capacity() && start.getInt() == MAGIC, cache + " is not a dataset cache.");
+            int version = start.getInt();
+            Preconditions.checkArgument(version == VERSION, "Unsupported dataset cache version " + version + ".");
+            int headerLength = start.getInt();
+            Preconditions.checkArgument(headerLength >= start.capacity() && headerLength <= channel.size(), cache + " is cut off.");
+            ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Read the whole header.
+            }
+            header.flip();
+            header.position(start.capacity());
+
+            List<Source> sources = Lists.newArrayList();
+            for (int i = header.getInt(); i > 0; i--) {
+                sources.add(new Source(getString(header), header.getLong(), header.getLong()));
+            }
+            List<Entry<String, Type>> nameAndType = Lists.newArrayList();
+            for (int i = header.getInt(); i > 0; i--) {
+                nameAndType.add(Maps.immutableEntry(getString(header), Type.values()[header.get()]));
+            }
+            int rows = header.getInt();
+            int columns = header.getInt();
+            DoubleBuffer[] doubles = new DoubleBuffer[columns];
+            IntBuffer[] codes = new IntBuffer[columns];
+            List<List<String>> nominalValues = Lists.newArrayList();
+            long position = header.capacity();
+            for (int column = 0; column < columns; column++) {
+                Type type = Type.values()[header.get()];
+                Preconditions.checkArgument(position + (long) rows * (type == Type.FLOAT ? Double.BYTES : Integer.BYTES) <= channel.size(),
+                        cache + " is cut off.");
+                if (type == Type.FLOAT) {
+                    doubles[column] = channel.map(MapMode.READ_ONLY, position, (long) rows * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                    nominalValues.add(null);
+                    position += align((long) rows * Double.BYTES);
+                } else {
+                    codes[column] = channel.map(MapMode.READ_ONLY, position, (long) rows * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                    ImmutableList.Builder<String> values = ImmutableList.builder();
+                    for (int i = header.getInt(); i > 0; i--) {
+                        values.add(getString(header));
+                    }
+                    nominalValues.add(values.build());
+                    position += align((long) rows * Integer.BYTES);
+                }
+            }
+            return new ColumnarDataset(sources, nameAndType, rows, doubles, codes, nominalValues);
+        }
+    }
+
+    /**
+     * Everything but the column blocks, padded so that the first block is aligned.
+     */
+    private ByteBuffer getHeader() {
+        List<byte[]> strings = Lists.newArrayList();
+        int length = 3 * Integer.BYTES + Integer.BYTES;
+        for (Source source : this.sources) {
+            length += addString(strings, source.path) + 2 * Long.BYTES;
+        }
+        length += Integer.BYTES;
+        for (Entry<String, Type> entry : this.nameAndType) {
+            length += addString(strings, entry.getKey()) + 1;
+        }
+        length += 2 * Integer.BYTES;
+        for (int column = 0; column < numColumns(); column++) {
+            length += 1;
+            if (this.types.get(column) == Type.NOMINAL) {
+                length += Integer.BYTES;
+                for (String value : this.nominalValues.get(column)) {
+                    length += addString(strings, value);
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate((int) align(length)).order(ByteOrder.LITTLE_ENDIAN);
+        Iterator<byte[]> string = strings.iterator();
+        header.putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(header.capacity())
+            .putInt(this.sources.size());
+        for (Source source : this.sources) {
+            putString(header, string.next()).putLong(source.size).putLong(source.lastModified);
+        }
+        header.putInt(this.nameAndType.size());
+        for (Entry<String, Type> entry : this.nameAndType) {
+            putString(header, string.next()).put((byte) entry.getValue().ordinal());
+        }
+        header.putInt(this.rows).putInt(numColumns());
+        for (int column = 0; column < numColumns(); column++) {
+            header.put((byte) this.types.get(column).ordinal());
+            if (this.types.get(column) == Type.NOMINAL) {
+                header.putInt(this.nominalValues.get(column).size());
+                for (int i = 0; i < this.nominalValues.get(column).size(); i++) {
+                    putString(header, string.next());
+                }
+            }
+        }
+        header.position(0);
+        return header;
+    }
+
+    private long getColumnBytes(int column) {
+        return align((long) this.rows * (this.types.get(column) == Type.FLOAT ? Double.BYTES : Integer.BYTES));
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static int addString(List<byte[]> strings, String value) {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        strings.add(bytes);
+        return Integer.BYTES + bytes.length;
+    }
+
+    private static ByteBuffer putString(ByteBuffer buffer, byte[] bytes) {
+        return buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    public int numRows() {
+        return this.rows;
+    }
+
+    public int numColumns() {
+        return this.names.size();
+    }
+
+    public String getName(int column) {
+        return this.names.get(column);
+    }
+
+    public Type getType(int column) {
+        return this.types.get(column);
+    }
+
+    /**
+     * Index of the column with the name, or -1 if there is none.
+     */
+    public int getColumn(String name) {
+        return this.names.indexOf(name);
+    }
+
+    public int getClassColumn() {
+        return this.names.size() - 1;
+    }
+
+    /**
+     * Values of a FLOAT column, indexed by row.
+     */
+    public DoubleBuffer getDoubles(int column) {
+        Preconditions.checkArgument(this.types.get(column) == Type.FLOAT, getName(column) + " is not a FLOAT attribute.");
+        return this.doubles[column].asReadOnlyBuffer();
+    }
+
+    /**
+     * Codes of a NOMINAL column, indexed by row. Code i stands for value i of {@link #getNominalValues(int)}.
+     */
+    public IntBuffer getCodes(int column) {
+        Preconditions.checkArgument(this.types.get(column) == Type.NOMINAL, getName(column) + " is not a NOMINAL attribute.");
+        return this.codes[column].asReadOnlyBuffer();
+    }
+
+    /**
+     * Values of a NOMINAL column in the order they were first seen.
+     */
+    public List<String> getNominalValues(int column) {
+        Preconditions.checkArgument(this.types.get(column) == Type.NOMINAL, getName(column) + " is not a NOMINAL attribute.");
+        return this.nominalValues.get(column);
+    }
+
+    /**
+     * Values of all NOMINAL attributes, by attribute name.
+     */
+    public ListMultimap<String, String> getNominalValues() {
+        ImmutableListMultimap.Builder<String, String> nominalAttributes = ImmutableListMultimap.builder();
+        for (int column = 0; column < numColumns(); column++) {
+            if (this.types.get(column) == Type.NOMINAL) {
+                nominalAttributes.putAll(this.names.get(column), this.nominalValues.get(column));
+            }
+        }
+        return nominalAttributes.build();
+    }
+
+    /**
+     * The rows as Weka Instances, made on the first call. Nominal values are coded in the same order, so the
+     * values of an Instance are the column values.
+     */
+    public synchronized Instances getInstances() {
+        if (this.instances == null) {
+            List<Attribute> attributes = Lists.newArrayList();
+            for (int column = 0; column < numColumns(); column++) {
+                if (this.types.get(column) == Type.FLOAT) {
+                    attributes.add(new Attribute(this.names.get(column)));
+                } else {
+                    attributes.add(new Attribute(this.names.get(column), this.nominalValues.get(column)));
+                }
+            }
+            Instances instances = new Instances("dataset", (ArrayList<Attribute>) attributes, this.rows);
+            for (int row = 0; row < this.rows; row++) {
+                double[] values = new double[numColumns()];
+                for (int column = 0; column < values.length; column++) {
+                    values[column] = this.doubles[column] != null ? this.doubles[column].get(row) : this.codes[column].get(row);
+                }
+                instances.add(new DenseInstance(1.0, values));
+            }
+            instances.setClassIndex(getClassColumn());
+            this.instances = instances;
+        }
+        return this.instances;
+    }
+}
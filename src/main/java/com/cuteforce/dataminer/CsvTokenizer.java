@@ -0,0 +1,205 @@
+package com.cuteforce.dataminer;
+
+import com.google.common.base.Charsets;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Splits comma-separated lines into fields directly in a byte buffer.
+ *
+ * Lines end with "\n", "\r" or "\r\n", and fields are trimmed of ASCII whitespace, like
+ * Splitter.on(",").trimResults() on the lines of a BufferedReader. Fields are read in place with
+ * {@link #getDouble(int)} and {@link #getCode(int, NominalDictionary)}, so reading a line makes no objects.
+ */
+final class CsvTokenizer implements Closeable {
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ReadableByteChannel channel;
+    private byte[] bytes = new byte[BUFFER_BYTES];
+    private int position;
+    private int limit;
+    private int scanned;
+    private boolean endOfInput;
+    private boolean afterCarriageReturn;
+    private int lineStart;
+    private int lineEnd;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private int fields;
+
+    CsvTokenizer(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Advance to the next line.
+     *
+     * @return False at the end of the input.
+     */
+    boolean next() throws IOException {
+        while (true) {
+            if (this.afterCarriageReturn && this.position < this.limit) {
+                if (this.bytes[this.position] == '\n') {
+                    this.position++;
+                }
+                this.afterCarriageReturn = false;
+            }
+            this.scanned = Math.max(this.scanned, this.position);
+            for (int i = this.scanned; i < this.limit; i++) {
+                byte b = this.bytes[i];
+                if (b == '\n' || b == '\r') {
+                    split(this.position, i);
+                    this.position = i + 1;
+                    this.afterCarriageReturn = b == '\r';
+                    return true;
+                }
+            }
+            this.scanned = this.limit;
+            if (this.endOfInput) {
+                if (this.position < this.limit) {
+                    split(this.position, this.limit);
+                    this.position = this.limit;
+                    return true;
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Move the unread bytes to the start of the buffer, growing it if a line fills it, and read more after them.
+     */
+    private void fill() throws IOException {
+        if (this.position > 0) {
+            System.arraycopy(this.bytes, this.position, this.bytes, 0, this.limit - this.position);
+            this.limit -= this.position;
+            this.scanned -= this.position;
+            this.position = 0;
+        }
+        if (this.limit == this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, 2 * this.bytes.length);
+        }
+        int read = this.channel.read(ByteBuffer.wrap(this.bytes, this.limit, this.bytes.length - this.limit));
+        if (read < 0) {
+            this.endOfInput = true;
+        } else {
+            this.limit += read;
+        }
+    }
+
+    private void split(int start, int end) {
+        this.lineStart = start;
+        this.lineEnd = end;
+        this.fields = 0;
+        int field = start;
+        for (int i = start; i < end; i++) {
+            if (this.bytes[i] == ',') {
+                addField(field, i);
+                field = i + 1;
+            }
+        }
+        addField(field, end);
+    }
+
+    private void addField(int start, int end) {
+        while (start < end && isWhitespace(this.bytes[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(this.bytes[end - 1])) {
+            end--;
+        }
+        if (this.fields == this.fieldStart.length) {
+            this.fieldStart = Arrays.copyOf(this.fieldStart, 2 * this.fields);
+            this.fieldEnd = Arrays.copyOf(this.fieldEnd, 2 * this.fields);
+        }
+        this.fieldStart[this.fields] = start;
+        this.fieldEnd[this.fields++] = end;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+
+    int getFieldCount() {
+        return this.fields;
+    }
+
+    /**
+     * The field parsed as by Double.parseDouble.
+     */
+    double getDouble(int field) {
+        return parseDouble(this.bytes, this.fieldStart[field], this.fieldEnd[field]);
+    }
+
+    /**
+     * Code of the field in the dictionary, which is added if it is new.
+     */
+    int getCode(int field, NominalDictionary dictionary) {
+        return dictionary.getCode(this.bytes, this.fieldStart[field], this.fieldEnd[field] - this.fieldStart[field]);
+    }
+
+    /**
+     * The current line, for error messages.
+     */
+    String getLine() {
+        return new String(this.bytes, this.lineStart, this.lineEnd - this.lineStart, Charsets.UTF_8);
+    }
+
+    /**
+     * Parse a decimal without exponent of at most 15 significant digits and 22 decimals directly: the digits and
+     * the power of ten are both exact doubles, so their quotient is the correctly rounded value, the same as
+     * Double.parseDouble gives. Anything else goes to Double.parseDouble.
+     */
+    static double parseDouble(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i++] == '-';
+        }
+        long digits = 0;
+        int significantDigits = 0;
+        int decimals = 0;
+        boolean point = false;
+        boolean anyDigit = false;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                digits = 10 * digits + (b - '0');
+                if (digits != 0 && ++significantDigits > MAX_FAST_DIGITS) {
+                    return parseDoubleSlowly(bytes, start, end);
+                }
+                decimals += point ? 1 : 0;
+                anyDigit = true;
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return parseDoubleSlowly(bytes, start, end);
+            }
+        }
+        if (!anyDigit || decimals >= POWERS_OF_TEN.length) {
+            return parseDoubleSlowly(bytes, start, end);
+        }
+        double value = digits / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlowly(byte[] bytes, int start, int end) {
+        return Double.parseDouble(new String(bytes, start, end - start, Charsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
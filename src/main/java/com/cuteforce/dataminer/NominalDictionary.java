@@ -0,0 +1,110 @@
+package com.cuteforce.dataminer;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Values of a nominal attribute, numbered from 0 in the order they are first seen.
+ *
+ * Values are looked up by their UTF-8 bytes in an open-addressing hash table, so the values of a column can be
+ * encoded straight from an input buffer. A String is only made for a value that is new.
+ */
+final class NominalDictionary {
+
+    private final List<String> values = Lists.newArrayList();
+    private byte[][] keys = new byte[16][];
+    private int[] hashes = new int[16];
+    // Code + 1 of the value in each slot, 0 if the slot is empty.
+    private int[] slots = new int[32];
+
+    /**
+     * Code of the value in bytes[offset, offset + length), which is added if it is new.
+     */
+    int getCode(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int mask = this.slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int code = this.slots[slot] - 1;
+            if (code < 0) {
+                return add(Arrays.copyOfRange(bytes, offset, offset + length), hash, slot);
+            } else if (this.hashes[code] == hash && equals(this.keys[code], bytes, offset, length)) {
+                return code;
+            }
+        }
+    }
+
+    int getCode(String value) {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        return getCode(bytes, 0, bytes.length);
+    }
+
+    int size() {
+        return this.values.size();
+    }
+
+    String getValue(int code) {
+        return this.values.get(code);
+    }
+
+    /**
+     * All values, in the order of their codes.
+     */
+    List<String> getValues() {
+        return Collections.unmodifiableList(this.values);
+    }
+
+    private int add(byte[] key, int hash, int slot) {
+        int code = this.values.size();
+        this.values.add(new String(key, Charsets.UTF_8));
+        if (code == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, 2 * code);
+            this.hashes = Arrays.copyOf(this.hashes, 2 * code);
+        }
+        this.keys[code] = key;
+        this.hashes[code] = hash;
+        this.slots[slot] = code + 1;
+        if (2 * (code + 1) > this.slots.length) {
+            rehash();
+        }
+        return code;
+    }
+
+    /**
+     * Double the table, keeping it at most half full.
+     */
+    private void rehash() {
+        this.slots = new int[2 * this.slots.length];
+        int mask = this.slots.length - 1;
+        for (int code = 0; code < this.values.size(); code++) {
+            int slot = this.hashes[code] & mask;
+            while (this.slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.slots[slot] = code + 1;
+        }
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(byte[] key, byte[] bytes, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
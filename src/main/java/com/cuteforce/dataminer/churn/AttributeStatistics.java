@@ -1,74 +1,225 @@
 package com.cuteforce.dataminer.churn;
 
 
-import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import com.cuteforce.dataminer.Dataset.Type;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
+/**
+ * Churn counts of one attribute. A FLOAT attribute is counted per interval between sorted boundaries, found by
+ * binary search, and the counts of values more than each boundary are summed up when reported. A NOMINAL
+ * attribute is counted per value code, so statistics coded over the same values, such as those of the chunks of
+ * one dataset, are merged by adding up their counts.
+ */
 public class AttributeStatistics {
 
     public final String attributeName;
     public final Type type;
-    public final Map<Object, Integer> frequenciesFalse;
-    public final Map<Object, Integer> frequenciesTrue;
+    private final double[] boundaries;
+    private List<String> values;
+    // Code of each NOMINAL value, built by the first lookup by value.
+    private Map<String, Integer> codes;
+    // FLOAT: values in (boundaries[i - 1], boundaries[i]] at i. NOMINAL: values with code i at i.
+    private int[] countsTrue;
+    private int[] countsFalse;
     private int totalTrue;
     private int totalFalse;
 
-    public AttributeStatistics(String name, Map<Object, Integer> trueFrequency, Map<Object, Integer> falseFrequency, Type type) {
+    /**
+     * Statistics of a FLOAT attribute, counting the values more than each boundary.
+     */
+    public AttributeStatistics(String name, double[] boundaries) {
         this.attributeName = name;
-        this.frequenciesFalse = falseFrequency;
-        this.frequenciesTrue = trueFrequency;
-        this.type = type;
-        this.totalTrue = 0;
-        this.totalFalse = 0;
+        this.type = Type.FLOAT;
+        this.boundaries = Arrays.stream(boundaries).sorted().distinct().toArray();
+        this.values = null;
+        this.codes = null;
+        this.countsTrue = new int[this.boundaries.length + 1];
+        this.countsFalse = new int[this.boundaries.length + 1];
+    }
+
+    /**
+     * Statistics of a NOMINAL attribute, where code i stands for values.get(i). Values not in the list are added
+     * as they are seen by {@link #update(String, boolean)}. The list is kept until then, so it must not change.
+     */
+    public AttributeStatistics(String name, List<String> values) {
+        this.attributeName = name;
+        this.type = Type.NOMINAL;
+        this.boundaries = null;
+        this.values = values;
+        this.codes = null;
+        this.countsTrue = new int[values.size()];
+        this.countsFalse = new int[values.size()];
     }
 
     public void update(String value, boolean isTrue) {
+        if (this.type == Type.FLOAT) {
+            update(Double.parseDouble(value), isTrue);
+        } else {
+            update(getCode(value), isTrue);
+        }
+    }
+
+    /**
+     * Code of a NOMINAL value, which is added if it is new.
+     */
+    private int getCode(String value) {
+        if (this.codes == null) {
+            this.values = Lists.newArrayList(this.values);
+            this.codes = Maps.newHashMap();
+            for (int code = 0; code < this.values.size(); code++) {
+                this.codes.put(this.values.get(code), code);
+            }
+        }
+        Integer code = this.codes.get(value);
+        if (code == null) {
+            code = this.values.size();
+            this.values.add(value);
+            this.codes.put(value, code);
+            if (code == this.countsTrue.length) {
+                this.countsTrue = Arrays.copyOf(this.countsTrue, Math.max(1, 2 * code));
+                this.countsFalse = Arrays.copyOf(this.countsFalse, this.countsTrue.length);
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Count a value of a FLOAT attribute.
+     */
+    public void update(double value, boolean isTrue) {
+        Preconditions.checkState(this.type == Type.FLOAT);
+        // Number of boundaries below the value. NaN is below none, so it is more than none of them.
+        int low = 0;
+        int high = this.boundaries.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.boundaries[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        count(low, isTrue);
+    }
+
+    /**
+     * Count a value of a NOMINAL attribute by its code.
+     */
+    public void update(int code, boolean isTrue) {
+        Preconditions.checkState(this.type == Type.NOMINAL);
+        count(code, isTrue);
+    }
+
+    private void count(int index, boolean isTrue) {
         if (isTrue) {
             this.totalTrue++;
+            this.countsTrue[index]++;
         } else {
             this.totalFalse++;
+            this.countsFalse[index]++;
         }
+    }
+
+    /**
+     * Add the counts of other statistics of the same attribute, such as those of another part of the rows.
+     * Nominal values are matched by value if the two were coded differently.
+     *
+     * @return These statistics.
+     */
+    public AttributeStatistics merge(AttributeStatistics other) {
+        Preconditions.checkArgument(this.attributeName.equals(other.attributeName) && this.type == other.type,
+                "Cannot merge statistics of " + other.attributeName + " into " + this.attributeName + ".");
         if (this.type == Type.FLOAT) {
-            double valueFloat = Double.parseDouble(value);
-            if (isTrue) {
-                updateFrequencyMap(this.frequenciesTrue, valueFloat);
-            } else {
-                updateFrequencyMap(this.frequenciesFalse, valueFloat);
+            Preconditions.checkArgument(Arrays.equals(this.boundaries, other.boundaries), "Boundaries of " + this.attributeName + " differ.");
+            for (int i = 0; i < this.countsTrue.length; i++) {
+                this.countsTrue[i] += other.countsTrue[i];
+                this.countsFalse[i] += other.countsFalse[i];
+            }
+        } else if (this.values.equals(other.values)) {
+            for (int code = 0; code < other.values.size(); code++) {
+                this.countsTrue[code] += other.countsTrue[code];
+                this.countsFalse[code] += other.countsFalse[code];
             }
         } else {
-            if (isTrue) {
-                Integer currentFreq = MoreObjects.firstNonNull(this.frequenciesTrue.get(value), 0);
-                this.frequenciesTrue.put(value, ++currentFreq);
-            } else {
-                Integer currentFreq = MoreObjects.firstNonNull(this.frequenciesFalse.get(value), 0);
-                this.frequenciesFalse.put(value, ++currentFreq);
+            for (int otherCode = 0; otherCode < other.values.size(); otherCode++) {
+                int code = getCode(other.values.get(otherCode));
+                this.countsTrue[code] += other.countsTrue[otherCode];
+                this.countsFalse[code] += other.countsFalse[otherCode];
             }
         }
+        this.totalTrue += other.totalTrue;
+        this.totalFalse += other.totalFalse;
+        return this;
     }
 
-    private void updateFrequencyMap(Map<Object, Integer> frequencyMap, double valueFloat) {
-        for (Entry<Object, Integer> entry : frequencyMap.entrySet()) {
-            Integer interval = (Integer) entry.getKey();
-            if (valueFloat > interval) {
-                frequencyMap.put(interval, frequencyMap.get(entry.getKey()) + 1);
-            }
+    /**
+     * For a FLOAT attribute, the number of values more than each boundary. For a NOMINAL attribute, the number
+     * of values with each code.
+     */
+    public int[] getFrequencies(boolean isTrue) {
+        int[] counts = isTrue ? this.countsTrue : this.countsFalse;
+        if (this.type == Type.NOMINAL) {
+            return Arrays.copyOf(counts, this.values.size());
         }
+        int[] moreThan = new int[this.boundaries.length];
+        int sum = 0;
+        for (int i = this.boundaries.length - 1; i >= 0; i--) {
+            sum += counts[i + 1];
+            moreThan[i] = sum;
+        }
+        return moreThan;
     }
 
-    public void printChurn(double minimumChurn) {
-        for (Entry<Object, Integer> entry : this.frequenciesTrue.entrySet()) {
-            Integer falseFrequency = MoreObjects.firstNonNull(this.frequenciesFalse.get(entry.getKey()), 0);
-            int totaltNumberInGroup = entry.getValue() + falseFrequency;
-            double churn = (double) entry.getValue() / (totaltNumberInGroup) * 100;
+    /**
+     * The boundaries of a FLOAT attribute, or the values of a NOMINAL attribute, in the order of
+     * {@link #getFrequencies(boolean)}.
+     */
+    public List<String> getLabels() {
+        if (this.type == Type.NOMINAL) {
+            return Lists.newArrayList(this.values);
+        }
+        List<String> labels = Lists.newArrayList();
+        for (double boundary : this.boundaries) {
+            labels.add(boundary == Math.rint(boundary) && !Double.isInfinite(boundary)
+                    ? Long.toString((long) boundary) : Double.toString(boundary));
+        }
+        return labels;
+    }
+
+    /**
+     * One line for every boundary or value with at least minimumChurn percent true outcomes.
+     */
+    public List<String> getChurn(double minimumChurn) {
+        int[] frequenciesTrue = getFrequencies(true);
+        int[] frequenciesFalse = getFrequencies(false);
+        List<String> labels = getLabels();
+        List<String> lines = Lists.newArrayList();
+        for (int i = 0; i < frequenciesTrue.length; i++) {
+            if (this.type == Type.NOMINAL && frequenciesTrue[i] == 0) {
+                // Only values seen among the true outcomes are reported.
+                continue;
+            }
+            int totaltNumberInGroup = frequenciesTrue[i] + frequenciesFalse[i];
+            double churn = (double) frequenciesTrue[i] / (totaltNumberInGroup) * 100;
             if (churn >= minimumChurn) {
-                System.err.println(this.attributeName + (this.type == Type.FLOAT ?  " more than " : " ")
-                        + entry.getKey() + " has churn " + churn + " amoung customers in total: " + totaltNumberInGroup
+                lines.add(this.attributeName + (this.type == Type.FLOAT ?  " more than " : " ")
+                        + labels.get(i) + " has churn " + churn + " amoung customers in total: " + totaltNumberInGroup
                         + " / " + (double) totaltNumberInGroup / (this.totalFalse + this.totalTrue) * 100 + "%");
             }
         }
+        return lines;
+    }
+
+    public void printChurn(double minimumChurn) {
+        for (String line : getChurn(minimumChurn)) {
+            System.err.println(line);
+        }
     }
 }
@@ -0,0 +1,99 @@
+package com.cuteforce.dataminer.churn;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import com.cuteforce.dataminer.ColumnarDataset;
+import com.cuteforce.dataminer.Dataset.Type;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the {@link AttributeStatistics} of every attribute of a dataset in parallel.
+ *
+ * The rows are split into chunks, and each chunk is counted into statistics of its own, one column at a time, on
+ * the common fork/join pool. The statistics of the chunks are then merged. Counts are sums, so the result is the
+ * same as counting the rows in order.
+ */
+public class ChurnStatistics {
+
+    private static final int CHUNK_ROWS = 1 << 16;
+
+    private final ColumnarDataset dataset;
+    private final Map<String, double[]> boundaries;
+    private final boolean[] isTrue;
+
+    /**
+     * @param boundaries Boundaries of every FLOAT attribute, by name.
+     */
+    public ChurnStatistics(ColumnarDataset dataset, Map<String, double[]> boundaries) {
+        for (int column = 0; column < dataset.numColumns(); column++) {
+            Preconditions.checkArgument(dataset.getType(column) != Type.FLOAT || boundaries.containsKey(dataset.getName(column)),
+                    "No boundaries for " + dataset.getName(column) + ".");
+        }
+        this.dataset = dataset;
+        this.boundaries = boundaries;
+        // A row is true if its class value starts with "true", in any case.
+        List<String> classValues = dataset.getNominalValues(dataset.getClassColumn());
+        this.isTrue = new boolean[classValues.size()];
+        for (int code = 0; code < classValues.size(); code++) {
+            this.isTrue[code] = classValues.get(code).toLowerCase().startsWith("true");
+        }
+    }
+
+    /**
+     * Statistics of every attribute, including the class, by name in column order.
+     */
+    public Map<String, AttributeStatistics> compute() {
+        int rows = this.dataset.numRows();
+        int chunks = Math.max(1, (rows + CHUNK_ROWS - 1) / CHUNK_ROWS);
+        AttributeStatistics[] statistics = IntStream.range(0, chunks)
+            .parallel()
+            .mapToObj(chunk -> count(chunk * CHUNK_ROWS, Math.min(rows, (chunk + 1) * CHUNK_ROWS)))
+            .reduce((a, b) -> {
+                for (int column = 0; column < a.length; column++) {
+                    a[column].merge(b[column]);
+                }
+                return a;
+            })
+            .get();
+        Map<String, AttributeStatistics> byName = Maps.newLinkedHashMap();
+        for (AttributeStatistics attributeStatistics : statistics) {
+            byName.put(attributeStatistics.attributeName, attributeStatistics);
+        }
+        return byName;
+    }
+
+    /**
+     * Statistics of the rows in [start, end).
+     */
+    private AttributeStatistics[] count(int start, int end) {
+        IntBuffer classCodes = this.dataset.getCodes(this.dataset.getClassColumn());
+        boolean[] rowIsTrue = new boolean[end - start];
+        for (int row = start; row < end; row++) {
+            rowIsTrue[row - start] = this.isTrue[classCodes.get(row)];
+        }
+        AttributeStatistics[] statistics = new AttributeStatistics[this.dataset.numColumns()];
+        for (int column = 0; column < statistics.length; column++) {
+            String name = this.dataset.getName(column);
+            if (this.dataset.getType(column) == Type.FLOAT) {
+                statistics[column] = new AttributeStatistics(name, this.boundaries.get(name));
+                DoubleBuffer values = this.dataset.getDoubles(column);
+                for (int row = start; row < end; row++) {
+                    statistics[column].update(values.get(row), rowIsTrue[row - start]);
+                }
+            } else {
+                statistics[column] = new AttributeStatistics(name, this.dataset.getNominalValues(column));
+                IntBuffer codes = this.dataset.getCodes(column);
+                for (int row = start; row < end; row++) {
+                    statistics[column].update(codes.get(row), rowIsTrue[row - start]);
+                }
+            }
+        }
+        return statistics;
+    }
+}
@@ -1,5 +1,7 @@
 package com.cuteforce.crossword;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
 
 import com.cuteforce.crossword.Crossword;
@@ -7,21 +9,115 @@ import com.cuteforce.crossword.Crossword;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
 
 public class TestCrossword {
 
     @Test
     public void testCrossword() throws IOException {
-        Crossword cw = new Crossword(4, 1000000, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
+        Crossword cw = new Crossword(4, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
         String grid = cw.solve(true);
         Assert.assertEquals(grid, "sarsaloeroseseen");
-        cw = new Crossword(5, 1000000, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
+        cw = new Crossword(5, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
         grid = cw.solve(true);
         Assert.assertEquals(grid, "starstarotantueagutitosen");
     }
 
+    @Test
+    public void testCompiledDictionary() throws IOException {
+        int size = 5;
+        Dictionary heap = new Dictionary(size, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
+        File compiled = File.createTempFile("dictionary", ".bin");
+        compiled.deleteOnExit();
+        heap.save(compiled);
+        Dictionary mapped = Dictionary.load(compiled);
+
+        Assert.assertEquals(mapped.getWordCount(), heap.getWordCount());
+        byte[] letters = heap.getWordLetters();
+        Assert.assertEquals(mapped.getWordLetters(), letters);
+        for (int word = 0; word < heap.getWordCount(); word++) {
+            StringBuilder prefix = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                prefix.append(heap.getLetter(letters[word * size + i]));
+                Assert.assertEquals(mapped.getNode(prefix.toString()), heap.getNode(prefix.toString()));
+                Assert.assertEquals(mapped.getDaughterMask(mapped.getNode(prefix.toString())), heap.getDaughterMask(heap.getNode(prefix.toString())));
+            }
+            Assert.assertNotEquals(mapped.getNode(prefix.toString()), Dictionary.NONE);
+            // Words and non-words that differ in the last letter.
+            for (int letter = 0; letter < heap.getAlphabetSize(); letter++) {
+                String other = prefix.substring(0, size - 1) + heap.getLetter(letter);
+                Assert.assertEquals(mapped.getNode(other), heap.getNode(other));
+            }
+        }
+        Assert.assertEquals(new Crossword(mapped).solve(false), new Crossword(heap).solve(false));
+    }
+
+    @Test
+    public void testParallelRead() throws IOException {
+        // Lines of a word form and its lemma, with duplicates, line breaks of both kinds and non-ASCII letters.
+        String[] extra = {"Gr\u00fc\u00dfe.gru\u00df", "gr\u00fcsse.gr\u00fc\u00dfe", "\u00c4PFEL.apfel", "caf\u00e9.caf\u00e9", "na\u00efve.na\u00eff", "abcdefghijklmnop.abc"};
+        Random random = new Random(42);
+        StringBuilder list = new StringBuilder();
+        for (int line = 0; line < 400; line++) {
+            if (line % 40 == 0) {
+                list.append(extra[line / 40 % extra.length]).append('\n');
+            }
+            StringBuilder form = new StringBuilder();
+            for (int i = 3 + random.nextInt(5); i > 0; i--) {
+                form.append((char) ('a' + random.nextInt(8)));
+            }
+            String lemma = random.nextBoolean() ? form.toString() : form.substring(0, form.length() - 1);
+            list.append(random.nextInt(4) == 0 ? form.toString().toUpperCase() : form).append('.').append(lemma)
+                .append(random.nextInt(5) == 0 ? "\r\n" : "\n");
+        }
+        File words = File.createTempFile("words", ".txt");
+        File expectedFile = File.createTempFile("words", ".dict");
+        File actualFile = File.createTempFile("words", ".dict");
+        try {
+            Files.write(words.toPath(), list.toString().getBytes(Charsets.UTF_8));
+            TrieBuilder[] sequential = TrieBuilder.read(words, 4, 6, 1);
+            // Range boundaries fall inside words and lines, between duplicates and inside multi-byte letters.
+            for (int ranges = 2; ranges <= 64; ranges++) {
+                TrieBuilder[] parallel = TrieBuilder.read(words, 4, 6, ranges);
+                for (int i = 0; i < sequential.length; i++) {
+                    Dictionary expected = new Dictionary(sequential[i]);
+                    Dictionary actual = new Dictionary(parallel[i]);
+                    Assert.assertEquals(actual.getWordCount(), expected.getWordCount());
+                    for (String token : list.toString().split("[.\r\n]+")) {
+                        String word = token.toLowerCase();
+                        Assert.assertEquals(actual.getNode(word), expected.getNode(word), word);
+                    }
+                    expected.save(expectedFile);
+                    actual.save(actualFile);
+                    Assert.assertEquals(Files.readAllBytes(actualFile.toPath()), Files.readAllBytes(expectedFile.toPath()));
+                }
+            }
+            Assert.assertNotEquals(new Dictionary(sequential[1]).getNode("gr\u00fc\u00dfe"), Dictionary.NONE);
+            Assert.assertNotEquals(new Dictionary(sequential[1]).getNode("\u00e4pfel"), Dictionary.NONE);
+            Assert.assertNotEquals(new Dictionary(sequential[0]).getNode("gru\u00df"), Dictionary.NONE);
+        } finally {
+            words.delete();
+            expectedFile.delete();
+            actualFile.delete();
+        }
+    }
+
     /**
      * Valid crossword (8 x 8):
      *
@@ -48,6 +144,285 @@ public class TestCrossword {
         System.out.print("\n");
     }
 
+    @Test
+    public void testSolveAsync() throws Exception {
+        int size = 8;
+        File words = new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile());
+        Crossword crossword = new Crossword(size, words);
+        BruteForceCrossword bruteForce = new BruteForceCrossword(size, words);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Too large to solve in time, so the futures complete empty at the deadline.
+            Assert.assertFalse(crossword.solveAsync(Duration.ofMillis(100), executor).get(10, TimeUnit.SECONDS).isPresent());
+            Assert.assertFalse(bruteForce.solveAsync(Duration.ofMillis(100), executor).get(10, TimeUnit.SECONDS).isPresent());
+
+            // A cancelled future stops its search once it has started, which frees the executor for the next task.
+            long visited = crossword.getMetrics().getVisited();
+            CompletableFuture<Optional<String>> future = crossword.solveAsync(Duration.ofHours(1), executor);
+            while (crossword.getMetrics().getVisited() == visited) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(future.cancel(true));
+            executor.submit(() -> null).get(10, TimeUnit.SECONDS);
+
+            visited = bruteForce.getMetrics().getVisited();
+            future = bruteForce.solveAsync(Duration.ofHours(1), executor);
+            while (bruteForce.getMetrics().getVisited() == visited) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(future.cancel(true));
+            executor.submit(() -> null).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSearchMetrics() throws IOException, InterruptedException {
+        int size = 6;
+        Dictionary dictionary = new Dictionary(size, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
+        Crossword crossword = new Crossword(dictionary);
+        assertMetrics(crossword.getMetrics(), () -> crossword.solve(false), size);
+        BruteForceCrossword bruteForce = new BruteForceCrossword(dictionary);
+        assertMetrics(bruteForce.getMetrics(), () -> bruteForce.solve(false), size);
+    }
+
+    private static void assertMetrics(SearchMetrics metrics, Supplier<String> solve, int size) throws InterruptedException {
+        Assert.assertEquals(metrics.getDeadendsByDepth().length, size * size + 1);
+        // Time before the first search does not count towards the rate.
+        Thread.sleep(50);
+        long start = System.currentTimeMillis();
+        Assert.assertNotNull(solve.get());
+        long millis = System.currentTimeMillis() - start;
+        SearchMetrics.Snapshot snapshot = metrics.snapshot();
+        Assert.assertTrue(snapshot.visited > 0);
+        Assert.assertTrue(snapshot.deadends > 0);
+        Assert.assertEquals(LongStream.of(snapshot.deadendsByDepth).sum(), snapshot.deadends);
+        Assert.assertTrue(snapshot.elapsedMillis <= millis, snapshot.elapsedMillis + " > " + millis);
+        // Neither does time after it.
+        Thread.sleep(50);
+        Assert.assertEquals(metrics.snapshot().elapsedMillis, snapshot.elapsedMillis);
+    }
+
+    @Test
+    public void testConcurrentSolveAsync() throws Exception {
+        int size = 7;
+        File words = new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile());
+        BruteForceCrossword bruteForce = new BruteForceCrossword(size, words);
+        File checkpoint = File.createTempFile("crossword", ".checkpoint");
+        bruteForce.setCheckpoint(checkpoint, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Optional<String>> future = bruteForce.solveAsync(Duration.ofHours(1), executor);
+            while (bruteForce.getMetrics().getVisited() == 0) {
+                Thread.sleep(10);
+            }
+            // A second search on the same solver ends at its own deadline and leaves the first one running.
+            Assert.assertFalse(bruteForce.solveAsync(Duration.ofMillis(1), executor).get(10, TimeUnit.SECONDS).isPresent());
+            Assert.assertFalse(future.isDone());
+            // The first search still writes its frontier.
+            Assert.assertTrue(checkpoint.delete());
+            for (int wait = 0; wait < 1000 && !checkpoint.exists(); wait++) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(future.cancel(true));
+            Assert.assertFalse(Checkpoint.read(checkpoint, new Dictionary(size, words)).getFrontier().isEmpty());
+        } finally {
+            executor.shutdownNow();
+            checkpoint.delete();
+        }
+    }
+
+    @Test
+    public void testResumeCheckpoint() throws IOException {
+        int size = 5;
+        Dictionary dictionary = new Dictionary(size, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
+        String grid = new BruteForceCrossword(dictionary).solve(false);
+        // Search the last row under the other rows of the grid, counting the nodes up to each grid found.
+        int[] prefix = new int[size * (size - 1)];
+        for (int i = 0; i < prefix.length; i++) {
+            prefix[i] = dictionary.letterIndex(grid.charAt(i));
+        }
+        SearchState search = new SearchState(dictionary, null, prefix, -1);
+        List<String> grids = Lists.newArrayList();
+        List<Long> foundAt = Lists.newArrayList();
+        long nodes = 0;
+        for (int status; (status = search.advance(1)) != SearchState.EXHAUSTED; nodes++) {
+            if (status == SearchState.FOUND) {
+                grids.add(search.getLetters());
+                foundAt.add(nodes);
+            }
+        }
+
+        // The subtrees of the frontier, searched one after the other, give the grid the interrupted search finds next.
+        List<SearchState.Subtree> frontier = getFrontier(dictionary, prefix, foundAt.get(0) / 2);
+        for (int i = 1; i < frontier.size(); i++) {
+            Assert.assertTrue(frontier.get(i - 1).prefix.length >= frontier.get(i).prefix.length);
+        }
+        for (SearchState.Subtree subtree : frontier) {
+            SearchState state = new SearchState(dictionary, null, subtree.prefix, subtree.letters);
+            if (state.advance(Long.MAX_VALUE) == SearchState.FOUND) {
+                Assert.assertEquals(state.getLetters(), grids.get(0));
+                break;
+            }
+        }
+
+        // Interrupted right after its second to last grid, the resumed search finds the last one.
+        long interruptAt = grids.size() > 1 ? foundAt.get(grids.size() - 2) + 1 : foundAt.get(0) / 2;
+        File checkpoint = File.createTempFile("crossword", ".checkpoint");
+        checkpoint.deleteOnExit();
+        new Checkpoint(getFrontier(dictionary, prefix, interruptAt), null).write(checkpoint, dictionary);
+        Assert.assertEquals(new BruteForceCrossword(dictionary).resume(checkpoint, false), grids.get(grids.size() - 1));
+    }
+
+    /**
+     * Frontier of the search below the prefix after the given number of nodes.
+     */
+    private static List<SearchState.Subtree> getFrontier(Dictionary dictionary, int[] prefix, long nodes) {
+        SearchState state = new SearchState(dictionary, null, prefix, -1);
+        for (long i = 0; i < nodes; i++) {
+            state.advance(1);
+        }
+        List<SearchState.Subtree> frontier = Lists.newArrayList();
+        state.addFrontier(frontier);
+        return frontier;
+    }
+
+    /**
+     * Shard worker that exits as soon as it is handed a shard, unless another one has exited before.
+     */
+    public static class ExitingShardWorker {
+
+        static final File EXITED = new File(System.getProperty("java.io.tmpdir"), "crossword-exiting-shard-worker");
+
+        public static void main(String[] args) throws IOException {
+            String line = new BufferedReader(new InputStreamReader(System.in, Charsets.UTF_8)).readLine();
+            if (line == null || (line.startsWith(ShardWorker.SHARD) && EXITED.createNewFile())) {
+                System.exit(1);
+            }
+            System.setIn(new SequenceInputStream(new ByteArrayInputStream((line + "\n").getBytes(Charsets.UTF_8)), System.in));
+            ShardWorker.main(args);
+        }
+    }
+
+    @Test
+    public void testShardWorkerExits() throws IOException {
+        int size = 3;
+        File words = new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile());
+        ExitingShardWorker.EXITED.delete();
+        // The whole search is one shard, so the other worker has nothing to do when the first one exits with it.
+        String grid = new ShardCoordinator(size, words, 2, 1, ExitingShardWorker.class).solve(false);
+        Assert.assertTrue(ExitingShardWorker.EXITED.delete());
+        Dictionary dictionary = new Dictionary(size, words);
+        assertValidGrid(dictionary, grid, size);
+    }
+
+    @Test
+    public void testCountSolutions() throws IOException {
+        BruteForceCrossword cw = new BruteForceCrossword(3, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
+        long count = cw.count(false);
+        Assert.assertTrue(count > 0);
+        Assert.assertEquals(cw.solutions().parallel().distinct().count(), count);
+    }
+
+    @Test
+    public void testForwardCheckingCrossword() throws IOException {
+        int size = 8;
+        File words = new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile());
+        ForwardCheckingCrossword cw = new ForwardCheckingCrossword(size, words);
+        String grid = cw.solve(true);
+        Dictionary dictionary = new Dictionary(size, words);
+        assertValidGrid(dictionary, grid, size);
+    }
+
+    @Test
+    public void testPortfolioCrossword() throws IOException {
+        // Forward checking finishes in under a second at this size, the other solvers take a minute or more.
+        int size = 7;
+        File words = new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile());
+        Dictionary dictionary = new Dictionary(size, words);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        List<Deadline> deadlines = Lists.newArrayList();
+        String grid;
+        try {
+            grid = new PortfolioCrossword(2, dictionary).solve(executor, deadlines, true);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(grid, new ForwardCheckingCrossword(dictionary).solve(false));
+        assertValidGrid(dictionary, grid, size);
+        // The solvers that did not finish first are stopped by their deadlines, which every solver gives up on.
+        Assert.assertEquals(deadlines.size(), 5);
+        for (Deadline deadline : deadlines) {
+            Assert.assertTrue(deadline.isCancelled());
+        }
+        Deadline cancelled = new Deadline();
+        cancelled.cancel();
+        Assert.assertNull(new Crossword(dictionary).solve(false, cancelled));
+        Assert.assertNull(new BruteForceCrossword(dictionary).solve(false, cancelled));
+        Assert.assertNull(new ForwardCheckingCrossword(dictionary).solve(false, cancelled));
+        Assert.assertNull(new RandomizedCrossword(new NogoodCache(), 1, dictionary).solve(false, cancelled));
+    }
+
+    @Test
+    public void testRandomizedCrossword() throws IOException {
+        int size = 6;
+        File words = new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile());
+        Dictionary dictionary = new Dictionary(size, words);
+        String grid = new RandomizedCrossword(new NogoodCache(), 1, dictionary).solve(true);
+        assertValidGrid(dictionary, grid, size);
+        // The letter orders and restarts only depend on the seed.
+        Assert.assertEquals(new RandomizedCrossword(new NogoodCache(), 1, dictionary).solve(false), grid);
+    }
+
+    @Test
+    public void testSymmetricCrossword() throws IOException {
+        int size = 6;
+        File words = new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile());
+        String grid = new SymmetricCrossword(size, words).solve(true);
+        Dictionary dictionary = new Dictionary(size, words);
+        assertValidGrid(dictionary, grid, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < i; j++) {
+                Assert.assertEquals(grid.charAt(i * size + j), grid.charAt(j * size + i));
+            }
+        }
+    }
+
+    @Test
+    public void testSlotCrossword() throws IOException {
+        String[] layout = {"#...#", ".....", ".....", ".....", "#...#"};
+        File words = new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile());
+        WordIndex index = new WordIndex(3, 5, words);
+        Assert.assertEquals(index.getWordCount(5), new Dictionary(5, words).getWordCount());
+        String[] rows = new SlotCrossword(layout, index).solve(true).split("\n");
+        Assert.assertEquals(rows.length, layout.length);
+        for (int i = 0; i < layout.length; i++) {
+            StringBuilder column = new StringBuilder();
+            for (String row : rows) {
+                column.append(row.charAt(i));
+            }
+            for (String word : (rows[i] + SlotCrossword.BLOCK + column).split(String.valueOf(SlotCrossword.BLOCK))) {
+                Assert.assertTrue(word.isEmpty() || index.contains(word), word);
+            }
+        }
+    }
+
+    /**
+     * Every row and every column of the grid is a word of the dictionary.
+     */
+    private static void assertValidGrid(Dictionary dictionary, String grid, int size) {
+        Assert.assertEquals(grid.length(), size * size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder column = new StringBuilder();
+            for (int j = 0; j < size; j++) {
+                column.append(grid.charAt(j * size + i));
+            }
+            Assert.assertNotEquals(dictionary.getNode(grid.substring(i * size, (i + 1) * size)), Dictionary.NONE);
+            Assert.assertNotEquals(dictionary.getNode(column.toString()), Dictionary.NONE);
+        }
+    }
+
     @Test
     public void testgrid() throws IOException {
         Grid grid = new Grid(5, new Dictionary(5, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile())));
@@ -71,7 +446,7 @@ public class TestCrossword {
     @Test
     public void testSolve() throws IOException {
         int size = 8;
-        Crossword cw = new Crossword(size, 100000000, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
+        Crossword cw = new Crossword(size, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
         String grid = cw.solve(true);
 
         for (int i = 0; i < grid.length(); i++) {
@@ -0,0 +1,123 @@
+package com.cuteforce.crossword;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+public class TestNogoodCache {
+
+    @Test
+    public void testContains() {
+        NogoodCache cache = new NogoodCache(64);
+        int[] key = {3, 17, 5, 9, 12, 40};
+        cache.add(key);
+        Assert.assertTrue(cache.contains(key));
+        Assert.assertTrue(cache.contains(key.clone()));
+        // The key is copied, so the caller can reuse its array.
+        key[1] = 18;
+        Assert.assertFalse(cache.contains(key));
+        Assert.assertTrue(cache.contains(new int[] {3, 17, 5, 9, 12, 40}));
+        Assert.assertFalse(cache.contains(new int[] {3, 17, 5, 9, 12}));
+    }
+
+    @Test
+    public void testHashCollision() {
+        // The hash of {a, b} only depends on hash({a}) ^ b, which gives a second key with the same hash.
+        int[] key = {5, 1000};
+        int[] other = {6, NogoodCache.hash(new int[] {5}) ^ NogoodCache.hash(new int[] {6}) ^ 1000};
+        Assert.assertEquals(NogoodCache.hash(other), NogoodCache.hash(key));
+        NogoodCache cache = new NogoodCache(64);
+        cache.add(key);
+        Assert.assertTrue(cache.contains(key));
+        Assert.assertFalse(cache.contains(other));
+        cache.add(other);
+        Assert.assertTrue(cache.contains(key));
+        Assert.assertTrue(cache.contains(other));
+    }
+
+    @Test
+    public void testCapacity() throws IOException {
+        Assert.assertEquals(new NogoodCache(1).getCapacity(), 4);
+        Assert.assertEquals(new NogoodCache(4).getCapacity(), 4);
+        Assert.assertEquals(new NogoodCache(5).getCapacity(), 8);
+        Assert.assertEquals(new NogoodCache(1000).getCapacity(), 1024);
+
+        NogoodCache cache = new NogoodCache(64);
+        Random random = new Random(42);
+        int[] key = null;
+        for (int i = 0; i < 10000; i++) {
+            key = new int[] {random.nextInt(30), random.nextInt(), random.nextInt(), random.nextInt()};
+            cache.add(key);
+            Assert.assertTrue(cache.contains(key));
+        }
+        // Written keys are followed by a zero length, after the capacity.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        cache.write(new DataOutputStream(bytes));
+        int keys = (bytes.size() - 2 * Integer.BYTES) / ((key.length + 1) * Integer.BYTES);
+        Assert.assertEquals(keys, cache.getCapacity());
+    }
+
+    @Test
+    public void testEviction() {
+        // All keys share the single bucket of four.
+        NogoodCache cache = new NogoodCache(4);
+        int[][] keys = {{0, 1}, {1, 2}, {3, 3}, {2, 4}, {9, 5}};
+        for (int i = 0; i < 4; i++) {
+            cache.add(keys[i]);
+        }
+        // The hit entry gets a second chance, and the deepest of the others is evicted.
+        Assert.assertTrue(cache.contains(keys[0]));
+        cache.add(keys[4]);
+        Assert.assertFalse(cache.contains(keys[2]));
+        for (int i : new int[] {0, 1, 3, 4}) {
+            Assert.assertTrue(cache.contains(keys[i]));
+        }
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        int size = 4;
+        Dictionary dictionary = new Dictionary(size, new File(Resources.getResource(TestCrossword.class, "lemmatization.txt").getFile()));
+        NogoodCache cache = new NogoodCache(256);
+        Random random = new Random(42);
+        int[][] added = new int[300][];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = new int[size + 2];
+            for (int j = 0; j < added[i].length; j++) {
+                added[i][j] = random.nextInt(1000);
+            }
+            cache.add(added[i]);
+        }
+        List<SearchState.Subtree> frontier = ImmutableList.of(new SearchState.Subtree(new int[] {1, 2}, 0b101));
+        File file = File.createTempFile("nogoods", ".checkpoint");
+        try {
+            new Checkpoint(frontier, cache).write(file, dictionary);
+            Checkpoint checkpoint = Checkpoint.read(file, dictionary);
+            NogoodCache read = checkpoint.getNogoods();
+            Assert.assertEquals(read.getCapacity(), cache.getCapacity());
+            int kept = 0;
+            for (int[] key : added) {
+                Assert.assertEquals(read.contains(key), cache.contains(key));
+                kept += cache.contains(key) ? 1 : 0;
+            }
+            Assert.assertTrue(kept > 0);
+            Assert.assertEquals(checkpoint.getFrontier().size(), 1);
+            Assert.assertEquals(checkpoint.getFrontier().get(0).prefix, new int[] {1, 2});
+            Assert.assertEquals(checkpoint.getFrontier().get(0).letters, 0b101);
+
+            new Checkpoint(frontier, null).write(file, dictionary);
+            Assert.assertNull(Checkpoint.read(file, dictionary).getNogoods());
+        } finally {
+            file.delete();
+        }
+    }
+}
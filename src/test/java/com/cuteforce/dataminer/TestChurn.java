@@ -6,28 +6,31 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
 import com.google.common.math.DoubleMath;
+import com.google.common.primitives.Doubles;
 
 import com.cuteforce.dataminer.churn.AttributeStatistics;
+import com.cuteforce.dataminer.churn.ChurnStatistics;
 import com.cuteforce.dataminer.Dataset.Type;
 
 
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import weka.core.Attribute;
-import weka.core.AttributeStats;
 import weka.core.Instance;
 import weka.core.converters.XRFFSaver;
 import weka.experiment.Stats;
 
 import java.io.File;
 import java.math.RoundingMode;
+import java.nio.IntBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 public class TestChurn {
 
-    private static Map<String, Type> typeMap = ImmutableMap.<String, Type>builder()
+    static Map<String, Type> typeMap = ImmutableMap.<String, Type>builder()
             .put("state", Type.NOMINAL)
             .put("accountLength", Type.FLOAT)
             .put("areaCode", Type.NOMINAL)
@@ -81,36 +84,111 @@ public class TestChurn {
         }
     }
 
-    private Map<String, AttributeStatistics> getAttributeStatistics(List<Entry<String, Type>> attributeTypes, Dataset train) {
-        Map<String, AttributeStatistics> statistics = Maps.newHashMap();
-        attributeTypes = removeIgnored(attributeTypes);
+    @Test
+    public void testParallelStatistics() throws Exception {
+        List<Entry<String, Type>> attributeTypes = Lists.newArrayList(typeMap.entrySet());
+        List<String> files = ImmutableList.of(Resources.getResource(TestChurn.class, "churn.all.txt").getFile());
+        Dataset train = Dataset.create(files, attributeTypes);
+        Map<String, AttributeStatistics> expected = getAttributeStatistics(attributeTypes, train);
+
+        ColumnarDataset dataset = ColumnarDataset.create(files, attributeTypes);
+        Map<String, AttributeStatistics> statistics = new ChurnStatistics(dataset, getBoundaries(attributeTypes, train)).compute();
+
+        Assert.assertEquals(statistics.keySet(), expected.keySet());
+        for (AttributeStatistics stats : statistics.values()) {
+            AttributeStatistics expectedStats = expected.get(stats.attributeName);
+            Assert.assertEquals(stats.getLabels(), expectedStats.getLabels());
+            Assert.assertEquals(stats.getFrequencies(true), expectedStats.getFrequencies(true));
+            Assert.assertEquals(stats.getFrequencies(false), expectedStats.getFrequencies(false));
+            Assert.assertEquals(stats.getChurn(25.0), expectedStats.getChurn(25.0));
+        }
+    }
+
+    @Test
+    public void testMergeStatistics() throws Exception {
+        List<Entry<String, Type>> attributeTypes = Lists.newArrayList(typeMap.entrySet());
+        List<String> files = ImmutableList.of(Resources.getResource(TestChurn.class, "churn.all.txt").getFile());
+        ColumnarDataset dataset = ColumnarDataset.create(files, attributeTypes);
+        IntBuffer classCodes = dataset.getCodes(dataset.getClassColumn());
+        List<String> classValues = dataset.getNominalValues(dataset.getClassColumn());
+        for (int column = 0; column < dataset.numColumns(); column++) {
+            if (dataset.getType(column) != Type.NOMINAL) {
+                continue;
+            }
+            String name = dataset.getName(column);
+            List<String> values = dataset.getNominalValues(column);
+            IntBuffer codes = dataset.getCodes(column);
+            AttributeStatistics expected = new AttributeStatistics(name, values);
+            // Halves coded over the same values, and a third part coded by value in reverse order.
+            AttributeStatistics first = new AttributeStatistics(name, values);
+            AttributeStatistics second = new AttributeStatistics(name, values);
+            AttributeStatistics third = new AttributeStatistics(name, Lists.reverse(values).subList(0, values.size() / 2));
+            for (int row = 0; row < dataset.numRows(); row++) {
+                boolean isTrue = classValues.get(classCodes.get(row)).toLowerCase().startsWith("true");
+                expected.update(codes.get(row), isTrue);
+                if (row < dataset.numRows() / 3) {
+                    first.update(codes.get(row), isTrue);
+                } else if (row < 2 * dataset.numRows() / 3) {
+                    second.update(codes.get(row), isTrue);
+                } else {
+                    third.update(values.get(codes.get(row)), isTrue);
+                }
+            }
+            AttributeStatistics merged = first.merge(second).merge(third);
+            Assert.assertEquals(merged.getLabels(), expected.getLabels());
+            Assert.assertEquals(merged.getFrequencies(true), expected.getFrequencies(true));
+            Assert.assertEquals(merged.getFrequencies(false), expected.getFrequencies(false));
+        }
+    }
 
-        // Initialize maps.
+    /**
+     * Boundaries of every FLOAT attribute, from its minimum in steps of its standard deviation.
+     */
+    private Map<String, double[]> getBoundaries(List<Entry<String, Type>> attributeTypes, Dataset train) {
+        Map<String, double[]> boundaries = Maps.newHashMap();
+        attributeTypes = removeIgnored(attributeTypes);
         for (int i = 0; i < train.instances.numAttributes(); i++) {
-            AttributeStats stats = train.instances.attributeStats(i);
             if (attributeTypes.get(i).getValue() == Type.FLOAT) {
-                Stats numStats = stats.numericStats;
+                Stats numStats = train.instances.attributeStats(i).numericStats;
                 double currentInterval = numStats.min;
-                Map<Object, Integer> trueFrequency = Maps.newHashMap();
-                Map<Object, Integer> falseFrequency = Maps.newHashMap();
+                List<Double> attributeBoundaries = Lists.newArrayList();
                 while (currentInterval <= numStats.max) {
-                    trueFrequency.put(DoubleMath.roundToInt(currentInterval, RoundingMode.CEILING), 0);
-                    falseFrequency.put(DoubleMath.roundToInt(currentInterval, RoundingMode.CEILING), 0);
+                    attributeBoundaries.add((double) DoubleMath.roundToInt(currentInterval, RoundingMode.CEILING));
                     // Use std dev as interval steps.
                     currentInterval += numStats.stdDev;
                 }
-                statistics.put(attributeTypes.get(i).getKey(), new AttributeStatistics(attributeTypes.get(i).getKey(), trueFrequency, falseFrequency, Type.FLOAT));
+                boundaries.put(attributeTypes.get(i).getKey(), Doubles.toArray(attributeBoundaries));
+            }
+        }
+        return boundaries;
+    }
+
+    private Map<String, AttributeStatistics> getAttributeStatistics(List<Entry<String, Type>> attributeTypes, Dataset train) {
+        Map<String, AttributeStatistics> statistics = Maps.newHashMap();
+        Map<String, double[]> boundaries = getBoundaries(attributeTypes, train);
+        attributeTypes = removeIgnored(attributeTypes);
+
+        // Initialize statistics.
+        for (int i = 0; i < train.instances.numAttributes(); i++) {
+            String name = attributeTypes.get(i).getKey();
+            if (attributeTypes.get(i).getValue() == Type.FLOAT) {
+                statistics.put(name, new AttributeStatistics(name, boundaries.get(name)));
             } else if (attributeTypes.get(i).getValue() == Type.NOMINAL) {
-                statistics.put(attributeTypes.get(i).getKey(), new AttributeStatistics(attributeTypes.get(i).getKey(), Maps.<Object, Integer>newHashMap(), Maps.<Object, Integer>newHashMap(), Type.NOMINAL));
+                statistics.put(name, new AttributeStatistics(name, train.nominalValues.get(name)));
             }
         }
 
         // Update statistics.
         for (Instance instance : train.instances) {
+            boolean isTrue = instance.toString(train.instances.classAttribute()).toLowerCase().startsWith("true");
             for (int i = 0; i < train.instances.numAttributes(); i++) {
                 Attribute attribute = instance.attribute(i);
                 AttributeStatistics attStatistics = statistics.get(attribute.name());
-                attStatistics.update(instance.toString(attribute), instance.toString(train.instances.classAttribute()).toLowerCase().startsWith("true"));
+                if (attribute.isNumeric()) {
+                    attStatistics.update(instance.value(i), isTrue);
+                } else {
+                    attStatistics.update((int) instance.value(i), isTrue);
+                }
             }
         }
         return statistics;
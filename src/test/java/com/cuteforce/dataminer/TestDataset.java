@@ -0,0 +1,139 @@
+package com.cuteforce.dataminer;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+
+import com.cuteforce.dataminer.Dataset.Type;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+public class TestDataset {
+
+    @Test
+    public void testParseDouble() {
+        String[] values = {
+            "0", "-0", "0.0", "-0.0", "+0", "1", "-1", "+1.5", "007", "000.25", "-00012.50", ".5", "-.5", "1.", "-1.",
+            "0.1", "0.2", "0.3", "2.675", "1.005", "123456789012345", "12345678901234.5", "0.000000000000001",
+            // More than 15 significant digits.
+            "1234567890123456", "0.1234567890123456789", "9007199254740993", "3.14159265358979323846",
+            // 22 and more decimals.
+            "0.0000000000000000000001", "0.00000000000000000000001", "1.0000000000000000000000001",
+            // Parsed by Double.parseDouble.
+            "1e3", "1E-3", "-2.5e+10", "1e400", "4.9e-324", "NaN", "-Infinity", "0x1p3", "1.5d", "2f", " 7 "
+        };
+        for (String value : values) {
+            assertParsed(value);
+        }
+        // Up to 18 significant digits and 23 decimals, around the limits of the fast path.
+        Random random = new Random(42);
+        for (int i = 0; i < 2000000; i++) {
+            StringBuilder digits = new StringBuilder(Long.toString(Math.abs(random.nextLong() % 1000000000000000000L) >> random.nextInt(60)));
+            int decimals = random.nextInt(24);
+            while (digits.length() <= decimals) {
+                digits.insert(0, '0');
+            }
+            if (decimals > 0) {
+                digits.insert(digits.length() - decimals, '.');
+            }
+            assertParsed((random.nextBoolean() ? "-" : "") + digits);
+        }
+        for (String value : new String[] {"", "-", ".", "-.", "1.2.3", "1,5", "abc", "1-"}) {
+            byte[] bytes = value.getBytes(Charsets.UTF_8);
+            try {
+                CsvTokenizer.parseDouble(bytes, 0, bytes.length);
+                Assert.fail(value);
+            } catch (NumberFormatException e) {
+                // Double.parseDouble rejects it as well.
+            }
+        }
+    }
+
+    private static void assertParsed(String value) {
+        byte[] bytes = (";" + value + ";").getBytes(Charsets.UTF_8);
+        Assert.assertEquals(Double.doubleToLongBits(CsvTokenizer.parseDouble(bytes, 1, bytes.length - 1)),
+                Double.doubleToLongBits(Double.parseDouble(value)), value);
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        List<Entry<String, Type>> attributeTypes = Lists.newArrayList(TestChurn.typeMap.entrySet());
+        File directory = Files.createTempDirectory("dataset").toFile();
+        File data = new File(directory, "churn.data.txt");
+        Files.copy(new File(Resources.getResource(TestChurn.class, "churn.data.txt").getFile()).toPath(), data.toPath());
+        File cache = new File(directory, "churn.data.bin");
+        List<String> files = ImmutableList.of(data.getPath());
+
+        // Written on the first call, and mapped unchanged on the next.
+        ColumnarDataset expected = ColumnarDataset.create(files, attributeTypes);
+        assertSameColumns(ColumnarDataset.open(files, attributeTypes, cache), expected);
+        byte[] written = Files.readAllBytes(cache.toPath());
+        assertSameColumns(ColumnarDataset.open(files, attributeTypes, cache), expected);
+        Assert.assertEquals(Files.readAllBytes(cache.toPath()), written);
+
+        // Rewritten when the modification time of the file changes.
+        Assert.assertTrue(data.setLastModified(data.lastModified() - 60000));
+        assertSameColumns(ColumnarDataset.open(files, attributeTypes, cache), expected);
+        Assert.assertNotEquals(Files.readAllBytes(cache.toPath()), written);
+
+        // Rewritten when the size of the file changes.
+        Files.write(data.toPath(), Files.readAllLines(data.toPath()).subList(0, 1), StandardOpenOption.APPEND);
+        ColumnarDataset appended = ColumnarDataset.open(files, attributeTypes, cache);
+        Assert.assertEquals(appended.numRows(), expected.numRows() + 1);
+        assertSameColumns(appended, ColumnarDataset.create(files, attributeTypes));
+        expected = ColumnarDataset.create(files, attributeTypes);
+        written = Files.readAllBytes(cache.toPath());
+
+        // Rewritten when the cache is not one, is of another version or is cut off.
+        writeInt(cache, 0, 0);
+        assertSameColumns(ColumnarDataset.open(files, attributeTypes, cache), expected);
+        Assert.assertEquals(Files.readAllBytes(cache.toPath()), written);
+        writeInt(cache, Integer.BYTES, 0);
+        assertSameColumns(ColumnarDataset.open(files, attributeTypes, cache), expected);
+        Assert.assertEquals(Files.readAllBytes(cache.toPath()), written);
+        try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        assertSameColumns(ColumnarDataset.open(files, attributeTypes, cache), expected);
+        Assert.assertEquals(Files.readAllBytes(cache.toPath()), written);
+
+        for (File file : directory.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+
+    private static void writeInt(File file, long position, int value) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES).putInt(0, value);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(bytes, position);
+        }
+    }
+
+    private static void assertSameColumns(ColumnarDataset actual, ColumnarDataset expected) {
+        Assert.assertEquals(actual.numRows(), expected.numRows());
+        Assert.assertEquals(actual.numColumns(), expected.numColumns());
+        for (int column = 0; column < expected.numColumns(); column++) {
+            Assert.assertEquals(actual.getName(column), expected.getName(column));
+            Assert.assertEquals(actual.getType(column), expected.getType(column));
+            if (expected.getType(column) == Type.FLOAT) {
+                Assert.assertEquals(actual.getDoubles(column), expected.getDoubles(column));
+            } else {
+                Assert.assertEquals(actual.getCodes(column), expected.getCodes(column));
+                Assert.assertEquals(actual.getNominalValues(column), expected.getNominalValues(column));
+            }
+        }
+    }
+}